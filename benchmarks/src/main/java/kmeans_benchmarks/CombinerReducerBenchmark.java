@@ -0,0 +1,77 @@
+package kmeans_benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IntWritable;
+import org.openjdk.jmh.annotations.*;
+
+import kmeans_hadoop.src.KmeansCombiner;
+import kmeans_hadoop.src.KmeansReducer;
+import kmeans_hadoop.src.Record;
+
+/*
+ * The merge side of an iteration: KmeansCombiner and KmeansReducer run over k keys
+ * with the given number of serialized values each, including the framework's
+ * deserialization of every value. Scores are per pass over all the values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class CombinerReducerBenchmark {
+
+    @Param({"4096", "65536"})
+    public int values;
+
+    @Param({"3", "256"})
+    public int k;
+
+    @Param({"4", "64"})
+    public int dim;
+
+    private final Configuration conf = new Configuration();
+    private final List<byte[][]> pairs = new ArrayList<>();
+
+    @Setup
+    public void setup() throws IOException {
+        double[][] points = SyntheticData.blobs(values, dim, k, 42);
+        DataOutputBuffer key = new DataOutputBuffer();
+        DataOutputBuffer value = new DataOutputBuffer();
+        // Sorted by key, as the shuffle delivers them
+        for (int c = 0; c < k; c++) {
+            for (int p = c; p < values; p += k) {
+                key.reset();
+                new IntWritable(c).write(key);
+                value.reset();
+                new Record(points[p]).write(value);
+                pairs.add(new byte[][] {
+                    Arrays.copyOf(key.getData(), key.getLength()),
+                    Arrays.copyOf(value.getData(), value.getLength())});
+            }
+        }
+    }
+
+    @Benchmark
+    public long combine() throws IOException, InterruptedException {
+        TaskContexts.CountingWriter<IntWritable, Record> writer = new TaskContexts.CountingWriter<>();
+        new KmeansCombiner().run(TaskContexts.reduceContext(conf, pairs, TaskContexts.comparator(IntWritable.class),
+                IntWritable.class, Record.class, writer));
+        return writer.pairs;
+    }
+
+    @Benchmark
+    public long reduce() throws IOException, InterruptedException {
+        TaskContexts.CountingWriter<IntWritable, Record> writer = new TaskContexts.CountingWriter<>();
+        new KmeansReducer().run(TaskContexts.reduceContext(conf, pairs, TaskContexts.comparator(IntWritable.class),
+                IntWritable.class, Record.class, writer));
+        return writer.pairs;
+    }
+}
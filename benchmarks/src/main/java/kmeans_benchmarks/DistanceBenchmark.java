@@ -0,0 +1,95 @@
+package kmeans_benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import utils.Distance;
+import utils.DistanceKernel;
+
+/*
+ * One point against one centroid for every distance, plus the squared Euclidean loop
+ * of the scalar kernel against the one DistanceKernel.get() picked (SIMD when the
+ * fork runs with jdk.incubator.vector). Each invocation covers a batch of points so
+ * that the call overhead does not dominate at small dimensions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class DistanceBenchmark {
+
+    private static final int POINTS = 256;
+
+    @Param({"4", "64", "512"})
+    public int dim;
+
+    private double[] points;
+    private double[] centroid;
+    private final Distance euclidean = new Distance.Euclidean();
+    private final Distance manhattan = new Distance.Manhattan();
+    private final Distance minkowski = new Distance.Minkowski(3);
+    private final Distance cosine = new Distance.Cosine();
+    private final DistanceKernel scalar = new DistanceKernel();
+    private final DistanceKernel selected = DistanceKernel.get();
+
+    @Setup
+    public void setup() {
+        points = SyntheticData.flatten(SyntheticData.blobs(POINTS, dim, 8, 42));
+        centroid = SyntheticData.centres(1, dim, 7)[0];
+    }
+
+    private double sum(Distance distance) {
+        double total = 0;
+        for (int p = 0; p < POINTS; p++) {
+            total += distance.reduced(points, p * dim, centroid);
+        }
+        return total;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double euclidean() {
+        return sum(euclidean);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double manhattan() {
+        return sum(manhattan);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double minkowski() {
+        return sum(minkowski);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double cosine() {
+        return sum(cosine);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double scalarKernel() {
+        double total = 0;
+        for (int p = 0; p < POINTS; p++) {
+            total += scalar.squaredEuclidean(points, p * dim, centroid, 0, dim);
+        }
+        return total;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double selectedKernel() {
+        double total = 0;
+        for (int p = 0; p < POINTS; p++) {
+            total += selected.squaredEuclidean(points, p * dim, centroid, 0, dim);
+        }
+        return total;
+    }
+}
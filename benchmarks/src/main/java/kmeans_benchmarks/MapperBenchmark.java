@@ -0,0 +1,94 @@
+package kmeans_benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.openjdk.jmh.annotations.*;
+
+import kmeans_hadoop.src.CentroidFile;
+import kmeans_hadoop.src.KmeansMapper;
+import kmeans_hadoop.src.Record;
+
+/*
+ * KmeansMapper.map over a buffer of synthetic CSV lines: parsing, assignment and
+ * either the in-mapper sums or one output pair per point. The centroids reach the
+ * mapper through a local centroid file registered as a cache file, like in a job.
+ * Scores are per line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class MapperBenchmark {
+
+    private static final int LINES = 4096;
+
+    @Param({"3", "64"})
+    public int k;
+
+    @Param({"4", "64"})
+    public int dim;
+
+    @Param({"standard", "blocked"})
+    public String assignment;
+
+    @Param({"true", "false"})
+    public boolean combining;
+
+    private Text[] lines;
+    private final LongWritable key = new LongWritable();
+    private KmeansMapper mapper;
+    private Mapper<LongWritable, Writable, IntWritable, Record>.Context context;
+    private TaskContexts.CountingWriter<IntWritable, Record> writer;
+    private File centroidFile;
+
+    @Setup
+    public void setup() throws IOException {
+        lines = SyntheticData.csvLines(SyntheticData.blobs(LINES, dim, k, 42));
+
+        double[][] centres = SyntheticData.centres(k, dim, 42);
+        Record[] centroids = new Record[k];
+        for (int c = 0; c < k; c++) {
+            centroids[c] = new Record(centres[c]);
+        }
+        Configuration conf = new Configuration();
+        conf.set("assignment", assignment);
+        conf.setBoolean("inmapper.combining", combining);
+        centroidFile = Files.createTempFile("centroids", ".bin").toFile();
+        Path path = new Path(centroidFile.toURI());
+        CentroidFile.write(conf, path, centroids);
+        conf.set(MRJobConfig.CACHE_FILES, path.toUri() + "#" + CentroidFile.LINK);
+
+        writer = new TaskContexts.CountingWriter<>();
+        context = TaskContexts.mapContext(conf, writer);
+        mapper = new KmeansMapper();
+        mapper.setup(context);
+    }
+
+    @TearDown
+    public void tearDown() {
+        centroidFile.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public long map() throws IOException, InterruptedException {
+        for (int l = 0; l < LINES; l++) {
+            key.set(l);
+            mapper.map(key, lines[l], context);
+        }
+        return writer.pairs;
+    }
+}
@@ -0,0 +1,75 @@
+package kmeans_benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import kmeans_hadoop.src.Record;
+
+/*
+ * Shuffle encoding of kmeans_hadoop.src.Record: write() of a batch of records into
+ * one buffer, and readFields() of that buffer into a reused Record as the framework
+ * does, with the features as doubles or as floats (shuffle.precision=float).
+ * Scores are per record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class RecordWritableBenchmark {
+
+    private static final int RECORDS = 1024;
+
+    @Param({"4", "64", "512"})
+    public int dim;
+
+    @Param({"false", "true"})
+    public boolean singlePrecision;
+
+    private Record[] records;
+    private final DataOutputBuffer out = new DataOutputBuffer();
+    private final DataInputBuffer in = new DataInputBuffer();
+    private byte[] serialized;
+    private int length;
+    private final Record reused = new Record();
+
+    @Setup
+    public void setup() throws IOException {
+        double[][] points = SyntheticData.blobs(RECORDS, dim, 8, 42);
+        records = new Record[RECORDS];
+        for (int r = 0; r < RECORDS; r++) {
+            records[r] = new Record(points[r]);
+            records[r].setSinglePrecision(singlePrecision);
+        }
+        serialize();
+        serialized = out.getData().clone();
+        length = out.getLength();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public int serialize() throws IOException {
+        out.reset();
+        for (Record record : records) {
+            record.write(out);
+        }
+        return out.getLength();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public double deserialize() throws IOException {
+        in.reset(serialized, length);
+        double checksum = 0;
+        for (int r = 0; r < RECORDS; r++) {
+            reused.readFields(in);
+            checksum += reused.features()[0];
+        }
+        return checksum;
+    }
+}
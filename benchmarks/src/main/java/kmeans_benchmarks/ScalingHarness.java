@@ -0,0 +1,202 @@
+package kmeans_benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+
+import kmeans_hadoop.src.KmeansDriver;
+import unparallelled_kmeans.KMeans;
+import unparallelled_kmeans.StreamingKMeans;
+import utils.CentroidFile;
+import utils.ContingencyMatrix;
+import utils.DataLoader;
+import utils.DatasetGenerator;
+import utils.Record;
+
+/*
+ * End-to-end scaling runs: for every dataset size, generates Gaussian blobs with
+ * DatasetGenerator (kept in dir and reused), then clusters them with each engine
+ * from the same initial centroids, the first k rows of the data:
+ *   sequential  unparallelled_kmeans.KMeans, including the time to load the file
+ *   streaming   unparallelled_kmeans.StreamingKMeans, reading the file every iteration
+ *   cached      KmeansDriver in mode=cached on the LocalJobRunner
+ *   mapreduce   KmeansDriver in mode=mapreduce on the LocalJobRunner, one job per iteration
+ * Every run reports its time, iterations and throughput in point-iterations per
+ * second; the table is also written to dir/scaling.csv for plotting, and for every
+ * size the fastest engine is printed, which shows where the crossover lies.
+ *
+ * Arguments are key=value pairs, all optional:
+ *   rows=10000,100000,1000000  dim=8  k=10  skew=0  spread=1  seed=42
+ *   engines=sequential,streaming,cached,mapreduce  format=kmb|csv  dir=/tmp/kmeans-scaling
+ *   threshold=0.0001  max.iteration=100  cached.threads=<cores>
+ */
+public class ScalingHarness {
+
+    private static class Result {
+        final String engine;
+        final long rows;
+        final int iterations;
+        final long millis;
+        final double ari;
+
+        Result(String engine, long rows, int iterations, long millis, double ari) {
+            this.engine = engine;
+            this.rows = rows;
+            this.iterations = iterations;
+            this.millis = millis;
+            this.ari = ari;
+        }
+
+        double pointsPerSecond() {
+            return millis == 0 ? Double.NaN : rows * (double) iterations / millis * 1000;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            if (keyValue.length != 2) {
+                System.err.println("Arguments are key=value pairs, got " + arg);
+                System.exit(1);
+            }
+            options.put(keyValue[0], keyValue[1]);
+        }
+
+        List<Long> sizes = new ArrayList<>();
+        for (String rows : options.getOrDefault("rows", "10000,100000,1000000").split(",")) {
+            sizes.add((long) Double.parseDouble(rows));
+        }
+        int dim = Integer.parseInt(options.getOrDefault("dim", "8"));
+        int k = Integer.parseInt(options.getOrDefault("k", "10"));
+        double skew = Double.parseDouble(options.getOrDefault("skew", "0"));
+        double spread = Double.parseDouble(options.getOrDefault("spread", "1"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        List<String> engines = Arrays.asList(options.getOrDefault("engines", "sequential,cached,mapreduce").split(","));
+        String extension = options.getOrDefault("format", "kmb").equals("csv") ? ".csv" : ".kmb";
+        File dir = new File(options.getOrDefault("dir", "/tmp/kmeans-scaling"));
+        double threshold = Double.parseDouble(options.getOrDefault("threshold", "0.0001"));
+        int maxIterations = Integer.parseInt(options.getOrDefault("max.iteration", "100"));
+        int threads = Integer.parseInt(options.getOrDefault("cached.threads",
+                Integer.toString(Runtime.getRuntime().availableProcessors())));
+        dir.mkdirs();
+
+        List<Result> results = new ArrayList<>();
+        for (long rows : sizes) {
+            String name = String.format("blobs-%d-%d-%d-%s-%d", rows, dim, k, skew, seed);
+            File data = new File(dir, name + extension);
+            if (!data.exists()) {
+                System.out.println("Generating " + data);
+                new DatasetGenerator(dim, k, skew, spread, seed).write(data.getPath(), rows);
+            }
+
+            // The generator is deterministic, so its first k points are the first k rows of the file
+            DatasetGenerator generator = new DatasetGenerator(dim, k, skew, spread, seed);
+            List<Record> initial = new ArrayList<>();
+            for (int c = 0; c < k; c++) {
+                double[] point = new double[dim];
+                generator.next(point);
+                initial.add(new Record(point, c));
+            }
+            File init = new File(dir, name + "-init.bin");
+            CentroidFile.write(init.getPath(), initial);
+
+            for (String engine : engines) {
+                Result result = engine.equals("sequential")
+                        ? runSequential(data, init, rows, k, threshold, maxIterations)
+                        : engine.equals("streaming")
+                        ? runStreaming(data, init, rows, k, threshold, maxIterations)
+                        : runDriver(engine, data, init, new File(dir, name + "-" + engine), rows, k, threshold,
+                                maxIterations, threads);
+                System.out.printf("%s rows=%d: %d iterations in %d ms%n", engine, rows, result.iterations, result.millis);
+                results.add(result);
+            }
+        }
+
+        report(results, new File(dir, "scaling.csv"));
+    }
+
+    private static Result runSequential(File data, File init, long rows, int k, double threshold, int maxIterations)
+            throws IOException {
+        long start = System.currentTimeMillis();
+        List<Record> records = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        DataLoader.load(data.getPath(), records, labels);
+
+        KMeans kMeans = new KMeans(records, k, maxIterations);
+        kMeans.setThreshold(threshold);
+        kMeans.setInitialCentroids(CentroidFile.read(init.getPath()));
+        kMeans.run();
+        long millis = System.currentTimeMillis() - start;
+
+        double ari = ContingencyMatrix.of(kMeans.getClusters(), labels).adjustedRandIndex();
+        return new Result("sequential", rows, kMeans.getHistory().size(), millis, ari);
+    }
+
+    private static Result runStreaming(File data, File init, long rows, int k, double threshold, int maxIterations)
+            throws IOException {
+        long start = System.currentTimeMillis();
+        StreamingKMeans kMeans = new StreamingKMeans(data.getPath(), k, maxIterations);
+        kMeans.setThreshold(threshold);
+        kMeans.setInitialCentroids(CentroidFile.read(init.getPath()));
+        kMeans.run();
+        long millis = System.currentTimeMillis() - start;
+
+        double ari = kMeans.evaluate().adjustedRandIndex();
+        return new Result("streaming", rows, kMeans.getHistory().size(), millis, ari);
+    }
+
+    private static Result runDriver(String mode, File data, File init, File output, long rows, int k,
+            double threshold, int maxIterations, int threads) throws Exception {
+        FileUtil.fullyDelete(output);
+        Configuration conf = new Configuration();
+        conf.set("mapreduce.framework.name", "local");
+        conf.set("fs.defaultFS", "file:///");
+        conf.set("mode", mode);
+        conf.setInt("k", k);
+        conf.setLong("dataset", rows);
+        conf.setDouble("threshold", threshold);
+        conf.setInt("max.iteration", maxIterations);
+        conf.setInt("cached.threads", threads);
+        conf.set("init.centroids", init.getPath());
+
+        KmeansDriver.Summary summary = KmeansDriver.run(conf, data.getPath(), output.getPath());
+        // Iterations only: the final assignment pass is the same for every mode
+        return new Result(mode, rows, summary.iterations, summary.totalMillis,
+                summary.evaluation.adjustedRandIndex());
+    }
+
+    private static void report(List<Result> results, File csv) throws IOException {
+        System.out.println();
+        System.out.printf("%-11s %12s %6s %10s %12s %14s %7s%n",
+                "engine", "rows", "iter", "total ms", "ms/iter", "points/s", "ARI");
+        try (PrintWriter out = new PrintWriter(csv)) {
+            out.println("engine,rows,iterations,total_ms,ms_per_iteration,points_per_second,ari");
+            for (Result r : results) {
+                double perIteration = r.iterations == 0 ? Double.NaN : (double) r.millis / r.iterations;
+                System.out.printf("%-11s %12d %6d %10d %12.1f %14.4g %7.4f%n",
+                        r.engine, r.rows, r.iterations, r.millis, perIteration, r.pointsPerSecond(), r.ari);
+                out.printf(Locale.ROOT, "%s,%d,%d,%d,%.3f,%.1f,%.6f%n",
+                        r.engine, r.rows, r.iterations, r.millis, perIteration, r.pointsPerSecond(), r.ari);
+            }
+        }
+
+        // Fastest engine per size, by throughput since the engines may stop after different iteration counts
+        System.out.println();
+        Map<Long, Result> fastest = new TreeMap<>();
+        for (Result r : results) {
+            Result best = fastest.get(r.rows);
+            if (best == null || r.pointsPerSecond() > best.pointsPerSecond()) {
+                fastest.put(r.rows, r);
+            }
+        }
+        for (Result r : fastest.values()) {
+            System.out.printf("rows=%d: fastest is %s%n", r.rows, r.engine);
+        }
+        System.out.println("Results written to " + csv);
+    }
+}
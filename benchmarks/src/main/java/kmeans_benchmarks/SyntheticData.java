@@ -0,0 +1,52 @@
+package kmeans_benchmarks;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.hadoop.io.Text;
+
+import utils.DatasetGenerator;
+
+/*
+ * Gaussian blobs for the benchmarks, from utils.DatasetGenerator with equal cluster
+ * sizes and unit noise. The same seed gives the same data, so runs with different
+ * parameters or code versions see identical inputs.
+ */
+public class SyntheticData {
+
+    public static double[][] centres(int k, int dim, long seed) {
+        return new DatasetGenerator(dim, k, 0, 1, seed).centres();
+    }
+
+    public static double[][] blobs(int n, int dim, int k, long seed) {
+        DatasetGenerator generator = new DatasetGenerator(dim, k, 0, 1, seed);
+        double[][] points = new double[n][dim];
+        for (double[] point : points) {
+            generator.next(point);
+        }
+        return points;
+    }
+
+    // Points in the CSV layout of the input files, with a placeholder label column
+    public static Text[] csvLines(double[][] points) {
+        Text[] lines = new Text[points.length];
+        StringBuilder line = new StringBuilder();
+        for (int p = 0; p < points.length; p++) {
+            line.setLength(0);
+            for (double value : points[p]) {
+                line.append(String.format("%.4f", value)).append(',');
+            }
+            line.append("blob-").append(p % 7);
+            lines[p] = new Text(line.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return lines;
+    }
+
+    public static double[] flatten(double[][] rows) {
+        int dim = rows.length == 0 ? 0 : rows[0].length;
+        double[] flat = new double[rows.length * dim];
+        for (int r = 0; r < rows.length; r++) {
+            System.arraycopy(rows[r], 0, flat, r * dim, dim);
+        }
+        return flat;
+    }
+}
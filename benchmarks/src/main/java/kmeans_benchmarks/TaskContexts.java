@@ -0,0 +1,132 @@
+package kmeans_benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mapreduce.*;
+import org.apache.hadoop.mapreduce.counters.GenericCounter;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.lib.reduce.WrappedReducer;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.apache.hadoop.mapreduce.task.ReduceContextImpl;
+import org.apache.hadoop.util.Progress;
+
+/*
+ * Task contexts for calling the mapper, combiner and reducer outside a job: output
+ * goes to a writer that only counts the pairs, counters to a private Counters.
+ */
+public class TaskContexts {
+
+    // Keeps the output reachable so that the JIT cannot drop the work producing it
+    public static class CountingWriter<K, V> extends RecordWriter<K, V> {
+        public long pairs;
+        public int hash;
+
+        @Override
+        public void write(K key, V value) {
+            pairs++;
+            hash += key.hashCode();
+        }
+
+        @Override
+        public void close(TaskAttemptContext context) {
+        }
+    }
+
+    private static class Reporter extends StatusReporter {
+        private final Counters counters = new Counters();
+
+        @Override
+        public Counter getCounter(Enum<?> name) {
+            return counters.findCounter(name);
+        }
+
+        @Override
+        public Counter getCounter(String group, String name) {
+            return counters.findCounter(group, name);
+        }
+
+        @Override
+        public void progress() {
+        }
+
+        @Override
+        public float getProgress() {
+            return 0;
+        }
+
+        @Override
+        public void setStatus(String status) {
+        }
+    }
+
+    public static <KI, VI, KO, VO> Mapper<KI, VI, KO, VO>.Context mapContext(Configuration conf,
+            RecordWriter<KO, VO> writer) {
+        MapContextImpl<KI, VI, KO, VO> context = new MapContextImpl<>(conf, new TaskAttemptID(), null, writer,
+                null, new Reporter(), null);
+        return new WrappedMapper<KI, VI, KO, VO>().getMapContext(context);
+    }
+
+    // WritableComparator implements the raw RawComparator, so the key type is restored here once
+    @SuppressWarnings("unchecked")
+    public static <K extends WritableComparable<?>> RawComparator<K> comparator(Class<K> keyClass) {
+        return (RawComparator<K>) WritableComparator.get(keyClass);
+    }
+
+    // A reduce context over already serialized, key-sorted pairs
+    public static <KI, VI, KO, VO> Reducer<KI, VI, KO, VO>.Context reduceContext(Configuration conf,
+            List<byte[][]> pairs, RawComparator<KI> comparator, Class<KI> keyClass, Class<VI> valueClass,
+            RecordWriter<KO, VO> writer) throws IOException, InterruptedException {
+        ReduceContextImpl<KI, VI, KO, VO> context = new ReduceContextImpl<>(conf, new TaskAttemptID(),
+                new PairIterator(pairs), new GenericCounter(), new GenericCounter(), writer, null, new Reporter(),
+                comparator, keyClass, valueClass);
+        return new WrappedReducer<KI, VI, KO, VO>().getReducerContext(context);
+    }
+
+    private static class PairIterator implements RawKeyValueIterator {
+        private final List<byte[][]> pairs;
+        private final DataInputBuffer key = new DataInputBuffer();
+        private final DataInputBuffer value = new DataInputBuffer();
+        private int next;
+
+        PairIterator(List<byte[][]> pairs) {
+            this.pairs = pairs;
+        }
+
+        @Override
+        public DataInputBuffer getKey() {
+            return key;
+        }
+
+        @Override
+        public DataInputBuffer getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean next() {
+            if (next == pairs.size()) {
+                return false;
+            }
+            byte[][] pair = pairs.get(next++);
+            key.reset(pair[0], pair[0].length);
+            value.reset(pair[1], pair[1].length);
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public Progress getProgress() {
+            return new Progress();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package unparallelled_kmeans;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import kmeans_benchmarks.SyntheticData;
+import utils.*;
+import utils.Record;
+
+/*
+ * The two halves of a sequential Lloyd iteration: assigning points to the nearest
+ * centroid (KMeans.nearestCluster against the batched kernel and the blocked tiles)
+ * and recomputing a centroid from its points (KMeans.getCentroid). Lives in the
+ * KMeans package to reach its package-private steps. Scores are per pass over the n points.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class KMeansBenchmark {
+
+    @Param({"4096", "131072"})
+    public int n;
+
+    @Param({"3", "32", "256"})
+    public int k;
+
+    @Param({"4", "64"})
+    public int dim;
+
+    private List<Record> records;
+    private KMeans kMeans;
+    private double[] packedPoints;
+    private double[] packedCentroids;
+    private double[] norms;
+    private int[] nearest;
+
+    @Setup
+    public void setup() {
+        double[][] points = SyntheticData.blobs(n, dim, k, 42);
+        records = new ArrayList<>();
+        for (int p = 0; p < points.length; p++) {
+            records.add(new Record(points[p], p));
+        }
+
+        double[][] centres = SyntheticData.centres(k, dim, 42);
+        List<Record> centroids = new ArrayList<>();
+        for (double[] centre : centres) {
+            centroids.add(new Record(centre, 0));
+        }
+        // No iterations: run() only installs the initial centroids
+        kMeans = new KMeans(records, k, 0);
+        kMeans.setInitialCentroids(centroids);
+        kMeans.run();
+
+        packedPoints = SyntheticData.flatten(points);
+        packedCentroids = SyntheticData.flatten(centres);
+        norms = BlockedAssignment.norms(packedCentroids, k, dim);
+        nearest = new int[n];
+    }
+
+    @Benchmark
+    public int nearestCluster() {
+        int checksum = 0;
+        for (Record record : records) {
+            checksum += kMeans.nearestCluster(record).getIndex();
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public int nearestKernel() {
+        DistanceKernel kernel = DistanceKernel.get();
+        int checksum = 0;
+        for (int p = 0; p < n; p++) {
+            checksum += kernel.nearestSquaredEuclidean(packedPoints, p * dim, packedCentroids, k, dim);
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public int[] nearestBlocked() {
+        BlockedAssignment.nearest(packedPoints, 0, n, dim, packedCentroids, norms, nearest, 0);
+        return nearest;
+    }
+
+    @Benchmark
+    public Record getCentroid() {
+        return kMeans.getCentroid(records);
+    }
+}
@@ -0,0 +1,90 @@
+package kmeans_hadoop.src;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CentroidFileTest {
+
+    private static final Record[] CENTROIDS = {
+            new Record(new double[] {0.1, -0.0, Double.MIN_VALUE}), new Record(new double[] {1.0 / 3, 1e300, -7.25})};
+
+    private static void assertSameBits(Record[] expected, Record[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int c = 0; c < expected.length; c++) {
+            double[] a = expected[c].features();
+            double[] b = actual[c].features();
+            assertEquals(a.length, b.length);
+            for (int i = 0; i < a.length; i++) {
+                assertEquals(Double.doubleToRawLongBits(a[i]), Double.doubleToRawLongBits(b[i]));
+            }
+        }
+    }
+
+    private static Path write(java.nio.file.Path dir, String name, Record[] centroids) throws IOException {
+        Path path = new Path(dir.resolve(name).toUri());
+        CentroidFile.write(new Configuration(), path, centroids);
+        return path;
+    }
+
+    @Test
+    void roundTripIsExact(@TempDir java.nio.file.Path dir) throws IOException {
+        Path path = write(dir, "c.bin", CENTROIDS);
+        assertSameBits(CENTROIDS, CentroidFile.read(new Configuration(), path));
+        assertSameBits(CENTROIDS, CentroidFile.readSaved(new Configuration(), path));
+    }
+
+    @Test
+    void truncatedFileFailsWithItsSizes(@TempDir java.nio.file.Path dir) throws IOException {
+        Path path = write(dir, "c.bin", CENTROIDS);
+        File file = new File(path.toUri());
+        // Drop the local checksum so the truncation reaches the decoder
+        Files.delete(file.toPath().resolveSibling(".c.bin.crc"));
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 8));
+        IOException e = assertThrows(IOException.class, () -> CentroidFile.read(new Configuration(), path));
+        assertTrue(e.getMessage().contains("expected 48 for 2 x 3"), e.getMessage());
+
+        Files.write(file.toPath(), Arrays.copyOf(bytes, 10));
+        assertThrows(IOException.class, () -> CentroidFile.read(new Configuration(), path));
+    }
+
+    /*
+     * A task reads its job's localized copy. A stale file under the link name in the working
+     * directory (where LocalJobRunner would not replace it) must not be read instead.
+     */
+    @Test
+    void loadReadsTheLocalizedCopyNotAStaleLink(@TempDir java.nio.file.Path dir) throws Exception {
+        Path cached = write(dir, "job-centroids.bin", CENTROIDS);
+        java.nio.file.Path localDir = Files.createDirectories(dir.resolve("local"));
+        Path localized = write(localDir, "job-centroids.bin", CENTROIDS);
+        File stale = new File(CentroidFile.LINK);
+        assertFalse(stale.exists(), "the test needs to create " + stale.getAbsolutePath());
+        try {
+            write(new File(".").getAbsoluteFile().toPath(), CentroidFile.LINK,
+                    new Record[] {new Record(new double[] {9, 9, 9}), new Record(new double[] {9, 9, 9})});
+
+            Job job = Job.getInstance(new Configuration());
+            CentroidFile.addToCache(job, cached);
+            job.getConfiguration().set(MRJobConfig.CACHE_LOCALFILES, localized.toString());
+            assertSameBits(CENTROIDS, CentroidFile.load(job));
+
+            // Without a localized copy the cached file is read from its file system
+            job.getConfiguration().unset(MRJobConfig.CACHE_LOCALFILES);
+            assertSameBits(CENTROIDS, CentroidFile.load(job));
+        } finally {
+            Files.deleteIfExists(stale.toPath());
+            Files.deleteIfExists(new File("." + CentroidFile.LINK + ".crc").toPath());
+        }
+    }
+}
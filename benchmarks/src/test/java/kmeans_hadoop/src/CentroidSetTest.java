@@ -0,0 +1,131 @@
+package kmeans_hadoop.src;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class CentroidSetTest {
+
+    private static Record[] centroids(Random random, int k, int dim) {
+        Record[] centroids = new Record[k];
+        for (int c = 0; c < k; c++) {
+            double[] features = new double[dim];
+            for (int i = 0; i < dim; i++) {
+                features[i] = random.nextGaussian() * 5;
+            }
+            centroids[c] = new Record(features);
+        }
+        return centroids;
+    }
+
+    // The SSE is a sum of squared Euclidean distances whether the distance is euclidean or sqeuclidean
+    @Test
+    void costIsTheSameUnderEuclideanAndSquaredEuclidean() {
+        Random random = new Random(3);
+        int k = 4;
+        int dim = 5;
+        Record[] seeds = centroids(random, k, dim);
+        CentroidSet euclidean = new CentroidSet(seeds, Distance.parse("euclidean"), false);
+        CentroidSet squared = new CentroidSet(seeds, Distance.parse("sqeuclidean"), false);
+
+        double euclideanSse = 0;
+        double squaredSse = 0;
+        double expected = 0;
+        for (int r = 0; r < 200; r++) {
+            double[] point = centroids(random, 1, dim)[0].features();
+            int nearest = euclidean.nearest(point, 0);
+            assertEquals(nearest, squared.nearest(point, 0));
+            euclideanSse += euclidean.cost(nearest, point, 0);
+            squaredSse += squared.cost(nearest, point, 0);
+            for (int i = 0; i < dim; i++) {
+                double diff = point[i] - seeds[nearest].features()[i];
+                expected += diff * diff;
+            }
+        }
+        assertEquals(expected, euclideanSse, 1e-9 * expected);
+        assertEquals(expected, squaredSse, 1e-9 * expected);
+    }
+
+    @Test
+    void costIsTheSquaredDistanceForOtherMetrics() {
+        Record[] seeds = {new Record(new double[] {0, 0})};
+        double[] point = {3, -4};
+        assertEquals(49, new CentroidSet(seeds, Distance.parse("manhattan"), false).cost(0, point, 0), 1e-12);
+        assertEquals(25, new CentroidSet(seeds, Distance.parse("2"), true).cost(0, point, 0), 1e-12);
+    }
+
+    // Pruning with half the inter-centroid distances must not change the nearest centroid
+    @Test
+    void triangleNearestMatchesTheFullScan() {
+        Random random = new Random(7);
+        Record[] seeds = centroids(random, 12, 3);
+        for (String name : new String[] {"euclidean", "manhattan", "3"}) {
+            CentroidSet full = new CentroidSet(seeds, Distance.parse(name), false);
+            CentroidSet triangle = new CentroidSet(seeds, Distance.parse(name), true);
+            AssignmentMetrics metrics = new AssignmentMetrics();
+            for (int r = 0; r < 2000; r++) {
+                double[] point = new double[3];
+                for (int i = 0; i < point.length; i++) {
+                    point[i] = random.nextGaussian() * 6;
+                }
+                // The point sits at offset 1 of its array
+                double[] shifted = {0, point[0], point[1], point[2]};
+                assertEquals(full.nearest(shifted, 1), triangle.nearest(shifted, 1, metrics), name);
+            }
+            assertTrue(metrics.pruned() > 0, name);
+        }
+    }
+
+    // The blocked path takes the same optional metrics as nearest()
+    @Test
+    void nearestBlockMatchesNearestWithOrWithoutMetrics() {
+        Random random = new Random(9);
+        Record[] seeds = centroids(random, 70, 9);
+        CentroidSet set = new CentroidSet(seeds, Distance.parse("euclidean"), false);
+        double[] points = new double[100 * 9];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = random.nextGaussian() * 5;
+        }
+        int[] withoutMetrics = new int[100];
+        set.nearestBlock(points, 0, 100, 9, withoutMetrics, 0, null);
+        AssignmentMetrics metrics = new AssignmentMetrics();
+        int[] withMetrics = new int[100];
+        set.nearestBlock(points, 0, 100, 9, withMetrics, 0, metrics);
+
+        assertArrayEquals(withoutMetrics, withMetrics);
+        assertEquals(100 * 70, metrics.distances());
+        for (int r = 0; r < 100; r++) {
+            assertEquals(set.nearest(points, r * 9), withMetrics[r]);
+        }
+    }
+
+    // The cost handed back by the assignment is the one cost() computes for the winner, on every path
+    @Test
+    void assignmentCostsMatchCost() {
+        Random random = new Random(13);
+        Record[] seeds = centroids(random, 11, 6);
+        double[] points = new double[300 * 6];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = random.nextGaussian() * 5;
+        }
+        for (String name : new String[] {"euclidean", "sqeuclidean", "manhattan", "cosine", "3"}) {
+            for (boolean triangle : new boolean[] {false, true}) {
+                CentroidSet set = new CentroidSet(seeds, Distance.parse(name), triangle);
+                double[] costs = new double[301];
+                int[] block = new int[301];
+                set.nearestBlock(points, 0, 300, 6, block, costs, 1, null);
+                double[] cost = new double[2];
+                for (int r = 0; r < 300; r++) {
+                    int nearest = set.nearest(points, r * 6, null, cost, 1);
+                    double expected = set.cost(nearest, points, r * 6);
+                    assertEquals(expected, cost[1], 1e-12 * expected, name);
+                    assertEquals(nearest, block[r + 1], name);
+                    // The blocked GEMM path adds ||x||^2 back to the expanded minimum
+                    assertEquals(expected, costs[r + 1], 1e-9 * (1 + expected), name);
+                }
+            }
+        }
+    }
+}
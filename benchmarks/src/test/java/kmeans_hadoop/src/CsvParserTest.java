@@ -0,0 +1,58 @@
+package kmeans_hadoop.src;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+class CsvParserTest {
+
+    private static double parse(String text) {
+        byte[] bytes = ("#" + text + "#").getBytes(StandardCharsets.UTF_8);
+        // Offsets inside a larger array, as for a field in the middle of a line
+        return CsvParser.parseDouble(bytes, 1, bytes.length - 1);
+    }
+
+    private static void assertSameAsJdk(String text) {
+        double expected = Double.parseDouble(text);
+        assertEquals(Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(parse(text)), text);
+    }
+
+    @Test
+    void fastPathMatchesDoubleParseDoubleBitForBit() {
+        Random random = new Random(8);
+        List<String> texts = new ArrayList<>(List.of("0", "-0", "+0.0", "0.000", "5.1", "-3.25", "007.50", ".5",
+                "5.", "1e22", "1e23", "1e-22", "1e-23", "123456789012345", "1234567890123456", "9007199254740993",
+                "0.1", "0.30000000000000004", "4.9e-324", "1.7976931348623157e308", "2.5E+3", "-7.0e-2", " 6.2 ",
+                "0.00000000000000000000001234"));
+        for (int i = 0; i < 20000; i++) {
+            double value = random.nextGaussian() * Math.pow(10, random.nextInt(30) - 15);
+            texts.add(Double.toString(value));
+            texts.add(String.format(Locale.ROOT, "%." + random.nextInt(18) + "f", value));
+            texts.add(String.format(Locale.ROOT, "%." + random.nextInt(16) + "e", value));
+            texts.add(Long.toString(random.nextLong() >> random.nextInt(64)));
+        }
+        for (String text : texts) {
+            assertSameAsJdk(text);
+        }
+    }
+
+    @Test
+    void malformedNumbersFailLikeDoubleParseDouble() {
+        for (String text : new String[] {"", "-", ".", "1e", "1e+", "1.2.3", "abc", "1,5"}) {
+            assertThrows(NumberFormatException.class, () -> Double.parseDouble(text), text);
+            assertThrows(NumberFormatException.class, () -> parse(text), text);
+        }
+    }
+
+    @Test
+    void parsesTheFeatureColumnsOfALine() {
+        byte[] line = "5.1,3.5,-1.4e-3,0.2,Iris-setosa".getBytes(StandardCharsets.UTF_8);
+        assertEquals(4, CsvParser.countFeatures(line, line.length));
+        double[] out = new double[4];
+        assertEquals(4, CsvParser.parseFeatures(line, line.length, out));
+        assertArrayEquals(new double[] {5.1, 3.5, -1.4e-3, 0.2}, out, 0);
+    }
+}
@@ -0,0 +1,93 @@
+package kmeans_hadoop.src;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import utils.BinaryDataset;
+
+class KmeansBinaryInputFormatTest {
+
+    private static final int ROWS = 500;
+    private static final int DIM = 3;
+
+    private static Path dataset(Path dir) throws Exception {
+        Path csv = dir.resolve("rows.csv");
+        StringBuilder text = new StringBuilder();
+        for (int r = 0; r < ROWS; r++) {
+            text.append(r).append(',').append(r + 0.5).append(',').append(-r).append(",l").append(r % 2).append('\n');
+        }
+        Files.writeString(csv, text);
+        Path kmb = dir.resolve("rows" + BinaryDatasetReader.EXTENSION);
+        BinaryDataset.convert(csv.toString(), kmb.toString());
+        return kmb;
+    }
+
+    // Row number and features of every row the splits of the file return, in split order
+    private static List<double[]> readAll(Path kmb, Configuration conf) throws Exception {
+        Job job = Job.getInstance(conf);
+        FileInputFormat.addInputPath(job, new org.apache.hadoop.fs.Path(kmb.toString()));
+        KmeansBinaryInputFormat format = new KmeansBinaryInputFormat();
+        List<double[]> rows = new ArrayList<>();
+        for (InputSplit split : format.getSplits(job)) {
+            TaskAttemptContext context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+            try (RecordReader<LongWritable, Record> reader = format.createRecordReader(split, context)) {
+                reader.initialize(split, context);
+                while (reader.nextKeyValue()) {
+                    double[] row = new double[DIM + 1];
+                    row[0] = reader.getCurrentKey().get();
+                    System.arraycopy(reader.getCurrentValue().features(), 0, row, 1, DIM);
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    // Splits that cut rows, the header or the label section still return every row exactly once
+    @Test
+    void splitsSnapToRows(@TempDir Path dir) throws Exception {
+        Path kmb = dataset(dir);
+        // Row size is 24 bytes and the header 32; none of these sizes is a multiple of either
+        for (long maxSize : new long[] {37, 100, 1001, 1 << 20}) {
+            Configuration conf = new Configuration();
+            conf.setLong(FileInputFormat.SPLIT_MAXSIZE, maxSize);
+            List<double[]> rows = readAll(kmb, conf);
+            assertEquals(ROWS, rows.size(), "split size " + maxSize);
+            for (int r = 0; r < ROWS; r++) {
+                assertArrayEquals(new double[] {r, r, r + 0.5, -r}, rows.get(r), 0, "split size " + maxSize);
+            }
+        }
+    }
+
+    // A sampled pass returns distinct rows with their own features, about the requested share of them
+    @Test
+    void sampledSplitsReturnASubsetOfTheRows(@TempDir Path dir) throws Exception {
+        Path kmb = dataset(dir);
+        Configuration conf = new Configuration();
+        conf.setLong(FileInputFormat.SPLIT_MAXSIZE, 1001);
+        conf.setDouble(KmeansBinaryInputFormat.SAMPLE_FRACTION, 0.2);
+        List<double[]> rows = readAll(kmb, conf);
+
+        Set<Double> seen = new HashSet<>();
+        for (double[] row : rows) {
+            assertTrue(seen.add(row[0]));
+            assertArrayEquals(new double[] {row[0], row[0] + 0.5, -row[0]}, Arrays.copyOfRange(row, 1, DIM + 1), 0);
+        }
+        assertTrue(rows.size() > ROWS * 0.1 && rows.size() < ROWS * 0.3, rows.size() + " rows");
+    }
+}
@@ -0,0 +1,127 @@
+package kmeans_hadoop.src;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import kmeans_benchmarks.SyntheticData;
+
+class KmeansCachedEngineTest {
+
+    // One file per partition, so every file is assigned as its own chunk
+    private static KmeansCachedEngine engine(Path dir, String... files) throws Exception {
+        for (int f = 0; f < files.length; f++) {
+            Files.writeString(dir.resolve("part-" + f + ".csv"), files[f]);
+        }
+        return open(dir, "standard");
+    }
+
+    private static KmeansCachedEngine open(Path dir, String assignment) throws Exception {
+        Configuration conf = new Configuration();
+        conf.set("assignment", assignment);
+        conf.setInt("cached.threads", 1);
+        return new KmeansCachedEngine(conf, dir.toString());
+    }
+
+    private static String blobCsv(double[][] points) {
+        StringBuilder csv = new StringBuilder();
+        for (Text line : SyntheticData.csvLines(points)) {
+            csv.append(line).append('\n');
+        }
+        return csv.toString();
+    }
+
+    // Runs iterations of both engines from the same seeds and checks they stay identical
+    private static void assertSameIterations(KmeansCachedEngine expected, KmeansCachedEngine actual, Record[] seeds,
+            int iterations) throws Exception {
+        Record[] a = seeds;
+        Record[] b = seeds;
+        for (int i = 0; i < iterations; i++) {
+            a = expected.iterate(a);
+            b = actual.iterate(b);
+            assertEquals(expected.reassigned(), actual.reassigned(), "iteration " + i);
+            assertEquals(expected.sse(), actual.sse(), 1e-9 * expected.sse(), "iteration " + i);
+            for (int c = 0; c < a.length; c++) {
+                assertEquals(a[c].numRecords(), b[c].numRecords(), "iteration " + i);
+                assertArrayEquals(a[c].features(), b[c].features(), 1e-9, "iteration " + i);
+            }
+        }
+    }
+
+    private static Record[] seeds(double[][] points, int k) {
+        Record[] seeds = new Record[k];
+        for (int c = 0; c < k; c++) {
+            seeds[c] = new Record(points[c * 7].clone());
+        }
+        return seeds;
+    }
+
+    private static BitSet frozen(int... clusters) {
+        BitSet frozen = new BitSet();
+        for (int c : clusters) {
+            frozen.set(c);
+        }
+        return frozen;
+    }
+
+    // Chunk A moves both of its rows out of frozen cluster 0 and keeps none of them; the negative
+    // sum of that chunk still has to reach the centroid, which becomes the mean of chunk B's rows
+    @Test
+    void frozenClusterSubtractsRowsOfAChunkItLostEntirely(@TempDir Path dir) throws Exception {
+        try (KmeansCachedEngine engine = engine(dir, "0.0,a\n0.1,a\n", "1.0,b\n1.1,b\n")) {
+            Record[] centroids = engine.iterate(new Record[] {
+                    new Record(new double[] {0.55}), new Record(new double[] {10})});
+            assertEquals(4, centroids[0].numRecords());
+
+            Record[] next = engine.iterate(new Record[] {
+                    new Record(new double[] {0.55}, 4), new Record(new double[] {-0.2}, 0)}, 0, 0, frozen(0));
+            assertEquals(2, next[0].numRecords());
+            assertEquals(1.05, next[0].features()[0], 1e-12);
+            assertEquals(2, next[1].numRecords());
+            assertEquals(0.05, next[1].features()[0], 1e-12);
+        }
+    }
+
+    // A frozen cluster that loses every row keeps its position instead of dividing by zero
+    @Test
+    void frozenClusterThatLosesEveryRowStaysPut(@TempDir Path dir) throws Exception {
+        try (KmeansCachedEngine engine = engine(dir, "0.0,a\n0.1,a\n", "1.0,b\n1.1,b\n")) {
+            engine.iterate(new Record[] {new Record(new double[] {0.05}), new Record(new double[] {1.05})});
+
+            Record[] next = engine.iterate(new Record[] {
+                    new Record(new double[] {5}, 2), new Record(new double[] {1.05}, 2)}, 0, 0, frozen(0));
+            assertEquals(0, next[0].numRecords());
+            assertEquals(5, next[0].features()[0]);
+            assertEquals(4, next[1].numRecords());
+            assertEquals(0.55, next[1].features()[0], 1e-12);
+        }
+    }
+
+    // A ragged row would shift every later row of the packed partition, so loading fails instead
+    @Test
+    void raggedRowFailsTheLoadWithItsPosition(@TempDir Path dir) {
+        IOException e = assertThrows(IOException.class, () -> engine(dir, "0.0,1.0,a\n2.0,a\n3.0,4.0,a\n"));
+        assertTrue(e.getMessage().contains("row 1 has 1 features, expected 2"), e.getMessage());
+        assertTrue(e.getMessage().contains("part-0.csv"), e.getMessage());
+    }
+
+    // Hamerly bounds must skip rows without changing any assignment
+    @Test
+    void triangleAssignmentMatchesStandardAssignment(@TempDir Path dir) throws Exception {
+        double[][] points = SyntheticData.blobs(3000, 4, 6, 5);
+        Files.writeString(dir.resolve("blobs.csv"), blobCsv(points));
+        try (KmeansCachedEngine standard = open(dir, "standard");
+                KmeansCachedEngine triangle = open(dir, "triangle")) {
+            assertSameIterations(standard, triangle, seeds(points, 6), 8);
+            assertTrue(triangle.metrics().pruned() > 0);
+        }
+    }
+}
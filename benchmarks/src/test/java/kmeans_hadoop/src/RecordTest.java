@@ -0,0 +1,105 @@
+package kmeans_hadoop.src;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.jupiter.api.Test;
+
+class RecordTest {
+
+    private static double[] features(Random random, int dim) {
+        double[] features = new double[dim];
+        for (int i = 0; i < dim; i++) {
+            features[i] = random.nextGaussian() * Math.pow(10, random.nextInt(20) - 10);
+        }
+        return features;
+    }
+
+    /*
+     * Records of several sizes written back to back and read into one reused Record, as the
+     * framework does. The dimensions and counts straddle the one- and two-byte vint ranges
+     * (dim << 1 crosses 127 between 63 and 64).
+     */
+    @Test
+    void doublesRoundTripExactlyThroughAReusedRecord() throws IOException {
+        Random random = new Random(1);
+        int[] dims = {0, 1, 63, 64, 200};
+        int[] counts = {1, 127, 128, Integer.MAX_VALUE};
+        DataOutputBuffer out = new DataOutputBuffer();
+        Record[] written = new Record[dims.length * counts.length];
+        int n = 0;
+        for (int dim : dims) {
+            for (int count : counts) {
+                Record record = new Record(features(random, dim), count);
+                int before = out.getLength();
+                record.write(out);
+                assertEquals(record.serializedSize(), out.getLength() - before, "dim " + dim + ", count " + count);
+                written[n++] = record;
+            }
+        }
+
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        Record read = new Record();
+        for (Record expected : written) {
+            read.readFields(in);
+            assertEquals(expected.numRecords(), read.numRecords());
+            assertEquals(expected.features().length, read.features().length);
+            for (int i = 0; i < expected.features().length; i++) {
+                assertEquals(Double.doubleToRawLongBits(expected.features()[i]),
+                        Double.doubleToRawLongBits(read.features()[i]));
+            }
+        }
+        assertEquals(out.getLength(), in.getPosition());
+    }
+
+    // Floats take four bytes a feature and come back as the float values; the flag survives a rewrite
+    @Test
+    void singlePrecisionKeepsTheFloatValues() throws IOException {
+        double[] features = features(new Random(2), 70);
+        Record record = new Record(features.clone(), 5);
+        record.setSinglePrecision(true);
+        DataOutputBuffer out = new DataOutputBuffer();
+        record.write(out);
+        assertEquals(2 + 1 + 4 * 70, out.getLength());
+        assertEquals(record.serializedSize(), out.getLength());
+
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        Record read = new Record();
+        read.readFields(in);
+        assertEquals(5, read.numRecords());
+        for (int i = 0; i < features.length; i++) {
+            assertEquals((float) features[i], read.features()[i]);
+        }
+
+        DataOutputBuffer again = new DataOutputBuffer();
+        read.write(again);
+        assertArrayEquals(Arrays.copyOf(out.getData(), out.getLength()),
+                Arrays.copyOf(again.getData(), again.getLength()));
+    }
+
+    // A compensated sum writes its folded value: plain additions of 1 to 1e16 would all be lost
+    @Test
+    void writeFoldsTheSumCompensation() throws IOException {
+        Record sum = new Record(new double[] {1e16, -1e16}, 1);
+        for (int i = 0; i < 10; i++) {
+            sum.sum(new Record(new double[] {1, -1}));
+        }
+        DataOutputBuffer out = new DataOutputBuffer();
+        sum.write(out);
+        assertEquals(sum.serializedSize(), out.getLength());
+
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        Record read = new Record();
+        read.readFields(in);
+        assertEquals(11, read.numRecords());
+        assertArrayEquals(new double[] {1e16 + 10, -1e16 - 10}, read.features(), 0);
+    }
+}
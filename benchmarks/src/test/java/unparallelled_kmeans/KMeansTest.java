@@ -0,0 +1,90 @@
+package unparallelled_kmeans;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+import kmeans_benchmarks.SyntheticData;
+import utils.*;
+import utils.Record;
+
+class KMeansTest {
+
+    private static final String IRIS = "../src/input/iris.data";
+
+    private static double finalSse(String distance) throws IOException {
+        List<Record> records = new ArrayList<>();
+        DataLoader.load(IRIS, records, new ArrayList<>());
+        KMeans kMeans = new KMeans(records, 3, 100);
+        kMeans.setDistance(Distance.parse(distance));
+        kMeans.run();
+        List<IterationStats> history = kMeans.getHistory();
+        return history.get(history.size() - 1).sse();
+    }
+
+    // Both distances give the same assignments, so the SSE must not depend on which one is used
+    @Test
+    void sseIsTheSameUnderEuclideanAndSquaredEuclidean() throws IOException {
+        double euclidean = finalSse("euclidean");
+        assertEquals(78.945, euclidean, 1e-3);
+        assertEquals(euclidean, finalSse("sqeuclidean"), 1e-9);
+    }
+
+    private static KMeans blobRun(AssignmentMode mode, String distance) {
+        double[][] points = SyntheticData.blobs(3000, 4, 6, 5);
+        List<Record> records = new ArrayList<>();
+        for (int r = 0; r < points.length; r++) {
+            records.add(new Record(points[r], r));
+        }
+        // The same seeds for every run; spread out so that points change cluster for a few iterations
+        List<Record> seeds = new ArrayList<>();
+        for (int c = 0; c < 6; c++) {
+            seeds.add(new Record(points[c * 7].clone(), 0));
+        }
+        KMeans kMeans = new KMeans(records, 6, 100);
+        kMeans.setAssignmentMode(mode);
+        kMeans.setDistance(Distance.parse(distance));
+        kMeans.setInitialCentroids(seeds);
+        kMeans.run();
+        return kMeans;
+    }
+
+    // Hamerly bounds only skip points whose cluster cannot change, so every iteration must match
+    @Test
+    void triangleAssignmentMatchesStandardAssignment() {
+        for (String distance : new String[] {"euclidean", "manhattan", "3"}) {
+            KMeans standard = blobRun(AssignmentMode.STANDARD, distance);
+            KMeans triangle = blobRun(AssignmentMode.TRIANGLE, distance);
+
+            List<IterationStats> expected = standard.getHistory();
+            List<IterationStats> actual = triangle.getHistory();
+            assertTrue(expected.size() > 2, distance);
+            assertEquals(expected.size(), actual.size(), distance);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).reassigned(), actual.get(i).reassigned(), distance);
+                assertEquals(expected.get(i).sse(), actual.get(i).sse(), 1e-9 * expected.get(i).sse(), distance);
+            }
+            for (int c = 0; c < 6; c++) {
+                assertArrayEquals(standard.getClusters().get(c).getCentroid().features(),
+                        triangle.getClusters().get(c).getCentroid().features(), 1e-12, distance);
+                assertEquals(standard.getClusters().get(c).getPoints().size(),
+                        triangle.getClusters().get(c).getPoints().size(), distance);
+            }
+        }
+    }
+
+    // The blocked matrix-product assignment only resolves exact near-ties differently, which blobs do not have
+    @Test
+    void blockedAssignmentMatchesStandardAssignment() {
+        KMeans standard = blobRun(AssignmentMode.STANDARD, "euclidean");
+        KMeans blocked = blobRun(AssignmentMode.BLOCKED, "euclidean");
+        assertEquals(standard.getHistory().size(), blocked.getHistory().size());
+        for (int c = 0; c < 6; c++) {
+            assertArrayEquals(standard.getClusters().get(c).getCentroid().features(),
+                    blocked.getClusters().get(c).getCentroid().features(), 1e-12);
+        }
+    }
+}
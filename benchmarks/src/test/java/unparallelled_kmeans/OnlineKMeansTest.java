@@ -0,0 +1,115 @@
+package unparallelled_kmeans;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import kmeans_benchmarks.SyntheticData;
+import utils.Record;
+
+class OnlineKMeansTest {
+
+    private static List<Record> batch(double[][] points, int from, int size) {
+        List<Record> batch = new ArrayList<>(size);
+        for (int r = from; r < from + size; r++) {
+            batch.add(new Record(points[r], r));
+        }
+        return batch;
+    }
+
+    @Test
+    void raggedBatchIsRejectedBeforeAnyUpdate() {
+        double[][] points = SyntheticData.blobs(40, 3, 2, 1);
+        OnlineKMeans model = new OnlineKMeans(2);
+        model.update(batch(points, 0, 20));
+        OnlineKMeans.Snapshot before = model.snapshot();
+
+        // The bad record comes last, after records that would have moved the centroids
+        List<Record> ragged = batch(points, 20, 20);
+        ragged.set(19, new Record(new double[] {1, 2}, 39));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> model.update(ragged));
+        assertTrue(e.getMessage().contains("Record 19"), e.getMessage());
+        assertSame(before, model.snapshot());
+
+        // Nor may a first batch seed centroids of mixed dimensions
+        OnlineKMeans empty = new OnlineKMeans(3);
+        List<Record> mixed = List.of(new Record(new double[] {0, 0}, 0), new Record(new double[] {1, 1, 1}, 1));
+        assertThrows(IllegalArgumentException.class, () -> empty.update(mixed));
+        assertEquals(0, empty.snapshot().pointsSeen());
+        empty.update(batch(points, 0, 5));
+        assertEquals(3, empty.snapshot().centroids().size());
+    }
+
+    /*
+     * Readers polling while batches are applied must only see whole batches: with no decay
+     * and no reseeding the weights sum to the points seen, which is a multiple of the batch size.
+     */
+    @Test
+    void snapshotsAreConsistentUnderConcurrentUpdates() throws InterruptedException {
+        int batchSize = 50;
+        double[][] points = SyntheticData.blobs(batchSize * 200, 4, 5, 2);
+        OnlineKMeans model = new OnlineKMeans(5);
+        model.setReseedInterval(0);
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            for (int from = 0; from < points.length; from += batchSize) {
+                model.update(batch(points, from, batchSize));
+            }
+        });
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            readers.add(new Thread(() -> {
+                try {
+                    OnlineKMeans.Snapshot last = model.snapshot();
+                    while (last.pointsSeen() < points.length) {
+                        OnlineKMeans.Snapshot snapshot = model.snapshot();
+                        assertTrue(snapshot.batches() >= last.batches());
+                        assertEquals(snapshot.batches() * batchSize, snapshot.pointsSeen());
+                        double total = 0;
+                        for (double weight : snapshot.weights()) {
+                            total += weight;
+                        }
+                        assertEquals(snapshot.pointsSeen(), total, 1e-9);
+                        assertEquals(snapshot.weights().length, snapshot.centroids().size());
+                        last = snapshot;
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+        writer.start();
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (failure.get() != null) {
+            fail(failure.get());
+        }
+    }
+
+    // A snapshot is a copy: later batches and changes through its accessors leave it as it was
+    @Test
+    void snapshotDoesNotChangeWithTheModel() {
+        double[][] points = SyntheticData.blobs(200, 2, 3, 3);
+        OnlineKMeans model = new OnlineKMeans(3);
+        model.update(batch(points, 0, 100));
+        OnlineKMeans.Snapshot snapshot = model.snapshot();
+        double[] centroid = snapshot.centroids().get(0).features().clone();
+        double[] weights = snapshot.weights();
+
+        snapshot.weights()[0] = -1;
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.centroids().clear());
+        model.update(batch(points, 100, 100));
+
+        assertArrayEquals(centroid, snapshot.centroids().get(0).features());
+        assertArrayEquals(weights, snapshot.weights());
+        assertEquals(100, snapshot.pointsSeen());
+        assertEquals(200, model.snapshot().pointsSeen());
+    }
+}
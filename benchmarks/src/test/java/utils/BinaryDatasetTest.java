@@ -0,0 +1,55 @@
+package utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BinaryDatasetTest {
+
+    // A .kmb file must hold exactly what the CSV it was converted from holds
+    @Test
+    void convertedFileReadsBackLikeTheCsv(@TempDir Path dir) throws Exception {
+        Path csv = dir.resolve("rows.csv");
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(1);
+        for (int r = 0; r < 1000; r++) {
+            text.append(random.nextGaussian()).append(',').append(r * 0.25).append(',')
+                    .append(-Double.MIN_VALUE * r).append(",label-").append(r % 3).append('\n');
+        }
+        Files.writeString(csv, text);
+        Path kmb = dir.resolve("rows" + BinaryDataset.EXTENSION);
+        BinaryDataset.convert(csv.toString(), kmb.toString());
+
+        List<Record> expected = new ArrayList<>();
+        List<String> expectedLabels = new ArrayList<>();
+        DataLoader.loadCsv(csv.toString(), expected, expectedLabels);
+        try (BinaryDataset dataset = BinaryDataset.open(kmb.toString())) {
+            assertEquals(1000, dataset.rows());
+            assertEquals(3, dataset.dim());
+            assertEquals(List.of("label-0", "label-1", "label-2"), dataset.labelNames());
+
+            List<Record> records = new ArrayList<>();
+            List<String> labels = new ArrayList<>();
+            dataset.load(records, labels);
+            assertEquals(expectedLabels, labels);
+            for (int r = 0; r < expected.size(); r++) {
+                assertArrayEquals(expected.get(r).features(), records.get(r).features(), 0);
+            }
+
+            // A range read from the middle, as BlockReader does
+            double[] block = new double[10 * 3];
+            int[] labelIds = new int[10];
+            dataset.read(995, 5, block);
+            dataset.readLabelIds(995, 5, labelIds);
+            for (int r = 0; r < 5; r++) {
+                assertArrayEquals(expected.get(995 + r).features(), Arrays.copyOfRange(block, r * 3, r * 3 + 3), 0);
+                assertEquals(expectedLabels.get(995 + r), dataset.labelNames().get(labelIds[r]));
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BlockReaderTest {
+
+    private static Path csv(Path dir, int rows, String tail) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int r = 0; r < rows; r++) {
+            text.append(r).append(',').append(r * 0.5).append(',').append(-r).append(",l").append(r % 2).append('\n');
+        }
+        Path path = dir.resolve("rows.csv");
+        Files.writeString(path, text + tail);
+        return path;
+    }
+
+    // Both formats give the same rows in order, in blocks that start where the previous one ended
+    @Test
+    void readsEveryRowOfBothFormats(@TempDir Path dir) throws IOException {
+        Path csv = csv(dir, 1000, "\n");
+        Path kmb = dir.resolve("rows" + BinaryDataset.EXTENSION);
+        BinaryDataset.convert(csv.toString(), kmb.toString());
+
+        for (Path path : List.of(csv, kmb)) {
+            try (BlockReader reader = BlockReader.open(path.toString(), 37, true)) {
+                assertEquals(3, reader.dim());
+                long row = 0;
+                BlockReader.Block block;
+                while ((block = reader.next()) != null) {
+                    assertEquals(row, block.firstRow);
+                    for (int r = 0; r < block.rows; r++, row++) {
+                        assertEquals(row, block.data[r * 3]);
+                        assertEquals(row * 0.5, block.data[r * 3 + 1]);
+                        assertEquals("l" + row % 2, reader.labelNames().get(block.labels[r]));
+                    }
+                }
+                assertEquals(1000, row, path.toString());
+                assertNull(reader.next());
+            }
+        }
+    }
+
+    /*
+     * The reading thread fails on a ragged row. The blocks before it are delivered, then
+     * next() throws with the row in the cause, and the reader stays ended afterwards.
+     */
+    @Test
+    void raggedRowSurfacesFromNext(@TempDir Path dir) throws IOException {
+        Path path = csv(dir, 100, "1,2\n");
+        try (BlockReader reader = BlockReader.open(path.toString(), 16, false)) {
+            long rows = 0;
+            IOException e = null;
+            try {
+                BlockReader.Block block;
+                while ((block = reader.next()) != null) {
+                    rows += block.rows;
+                }
+            } catch (IOException thrown) {
+                e = thrown;
+            }
+            assertNotNull(e, "the ragged row must fail the read");
+            assertTrue(e.getMessage().contains(path.toString()), e.getMessage());
+            assertTrue(e.getCause().getMessage().contains("Row 100 has 1 features, expected 3"),
+                    e.getCause().getMessage());
+            // The block holding rows 96 to 99 was being filled when the row failed
+            assertEquals(96, rows);
+            assertNull(reader.next());
+        }
+    }
+
+    // Runtime failures of the parser reach the caller the same way
+    @Test
+    void unparsableNumberSurfacesFromNext(@TempDir Path dir) throws IOException {
+        Path path = csv(dir, 10, "1,x,3,l0\n");
+        try (BlockReader reader = BlockReader.open(path.toString(), 4, false)) {
+            IOException e = assertThrows(IOException.class, () -> {
+                while (reader.next() != null) {
+                    // drain
+                }
+            });
+            assertInstanceOf(NumberFormatException.class, e.getCause());
+        }
+    }
+
+    @Test
+    void missingFileFailsToOpen(@TempDir Path dir) {
+        assertThrows(FileNotFoundException.class,
+                () -> BlockReader.open(dir.resolve("missing.csv").toString(), 16, false));
+    }
+
+    // Closing before the end stops the reading thread, which is blocked waiting for a free block
+    @Test
+    void closeBeforeTheEndReturns(@TempDir Path dir) throws IOException {
+        Path path = csv(dir, 10_000, "");
+        BlockReader reader = BlockReader.open(path.toString(), 1, false);
+        assertNotNull(reader.next());
+        assertTimeoutPreemptively(Duration.ofSeconds(10), reader::close);
+    }
+}
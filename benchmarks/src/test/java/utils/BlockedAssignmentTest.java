@@ -0,0 +1,48 @@
+package utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class BlockedAssignmentTest {
+
+    private static double[] gaussian(Random random, int length, double scale) {
+        double[] values = new double[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = random.nextGaussian() * scale;
+        }
+        return values;
+    }
+
+    // Sizes straddle the point, centroid and dimension tiles (64, 64, 256), with rows starting mid-array
+    @Test
+    void blockedNearestMatchesTheDirectScan() {
+        Random random = new Random(12);
+        DistanceKernel kernel = DistanceKernel.get();
+        int[][] shapes = {{1, 1, 1}, {3, 5, 7}, {65, 63, 3}, {130, 129, 17}, {70, 20, 300}, {200, 64, 257}};
+        for (int[] shape : shapes) {
+            int rows = shape[0];
+            int k = shape[1];
+            int dim = shape[2];
+            double[] points = gaussian(random, (rows + 2) * dim, 10);
+            double[] centroids = gaussian(random, k * dim, 10);
+            double[] norms = BlockedAssignment.norms(centroids, k, dim);
+            int[] out = new int[rows + 3];
+            BlockedAssignment.nearest(points, 2, rows + 2, dim, centroids, norms, out, 3);
+
+            for (int r = 0; r < rows; r++) {
+                int offset = (r + 2) * dim;
+                int expected = kernel.nearestSquaredEuclidean(points, offset, centroids, k, dim);
+                int actual = out[3 + r];
+                if (actual != expected) {
+                    // The expansion may only resolve a near-tie differently
+                    double best = kernel.squaredEuclidean(points, offset, centroids, expected * dim, dim);
+                    assertEquals(best, kernel.squaredEuclidean(points, offset, centroids, actual * dim, dim),
+                            1e-9 * (best + 1), "rows " + rows + ", k " + k + ", dim " + dim);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CentroidFileTest {
+
+    private static List<Record> centroids() {
+        return List.of(new Record(new double[] {0.1, -0.0, Double.MIN_VALUE}, 0),
+                new Record(new double[] {1.0 / 3, 1e300, -7.25}, 1));
+    }
+
+    // The binary layout keeps every double bit for bit, -0.0 and subnormals included
+    @Test
+    void binaryRoundTripIsExact(@TempDir Path dir) throws IOException {
+        String path = dir.resolve("centroids.bin").toString();
+        CentroidFile.write(path, centroids());
+        List<Record> read = CentroidFile.read(path);
+        assertEquals(2, read.size());
+        for (int c = 0; c < 2; c++) {
+            double[] expected = centroids().get(c).features();
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(Double.doubleToRawLongBits(expected[i]), Double.doubleToRawLongBits(read.get(c).features()[i]));
+            }
+        }
+    }
+
+    // Double.toString is parsed back to the same double
+    @Test
+    void textRoundTripKeepsTheValues(@TempDir Path dir) throws IOException {
+        String path = dir.resolve("centroids.txt").toString();
+        CentroidFile.write(path, centroids());
+        List<Record> read = CentroidFile.read(path);
+        for (int c = 0; c < 2; c++) {
+            assertArrayEquals(centroids().get(c).features(), read.get(c).features(), 0);
+        }
+    }
+
+    @Test
+    void truncatedBinaryFileFailsWithItsSizes(@TempDir Path dir) throws IOException {
+        Path path = dir.resolve("centroids.bin");
+        CentroidFile.write(path.toString(), centroids());
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 8));
+        IOException e = assertThrows(IOException.class, () -> CentroidFile.read(path.toString()));
+        assertTrue(e.getMessage().contains("expected 48 for 2 x 3"), e.getMessage());
+    }
+
+    @Test
+    void validateChecksCountAndDimension() {
+        CentroidFile.validate(centroids(), 2, 3);
+        assertThrows(IllegalArgumentException.class, () -> CentroidFile.validate(centroids(), 3, 3));
+        assertThrows(IllegalArgumentException.class, () -> CentroidFile.validate(centroids(), 2, 4));
+    }
+}
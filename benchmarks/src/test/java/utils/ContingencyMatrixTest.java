@@ -0,0 +1,303 @@
+package utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * The Hadoop tree keeps its own copy of ContingencyMatrix; both copies run the
+ * same checks through an adapter.
+ */
+class ContingencyMatrixTest {
+
+    private interface Matrix {
+        // The adapted matrix, so that merge can pass it on
+        Object target();
+
+        int labelId(String label);
+
+        void add(int cluster, String label);
+
+        void add(int cluster, int labelId);
+
+        void add(int cluster, String label, long count);
+
+        void merge(Matrix other);
+
+        List<String> labels();
+
+        long count(int cluster, int labelId);
+
+        long total();
+
+        int[][] toArray();
+
+        double purity();
+
+        double adjustedRandIndex();
+
+        double normalizedMutualInformation();
+    }
+
+    private static Matrix utils(int numClusters) {
+        ContingencyMatrix matrix = new ContingencyMatrix(numClusters);
+        return new Matrix() {
+            public Object target() {
+                return matrix;
+            }
+
+            public int labelId(String label) {
+                return matrix.labelId(label);
+            }
+
+            public void add(int cluster, String label) {
+                matrix.add(cluster, label);
+            }
+
+            public void add(int cluster, int labelId) {
+                matrix.add(cluster, labelId);
+            }
+
+            public void add(int cluster, String label, long count) {
+                matrix.add(cluster, label, count);
+            }
+
+            public void merge(Matrix other) {
+                matrix.merge((ContingencyMatrix) other.target());
+            }
+
+            public List<String> labels() {
+                return matrix.labels();
+            }
+
+            public long count(int cluster, int labelId) {
+                return matrix.count(cluster, labelId);
+            }
+
+            public long total() {
+                return matrix.total();
+            }
+
+            public int[][] toArray() {
+                return matrix.toArray();
+            }
+
+            public double purity() {
+                return matrix.purity();
+            }
+
+            public double adjustedRandIndex() {
+                return matrix.adjustedRandIndex();
+            }
+
+            public double normalizedMutualInformation() {
+                return matrix.normalizedMutualInformation();
+            }
+        };
+    }
+
+    private static Matrix hadoop(int numClusters) {
+        kmeans_hadoop.src.ContingencyMatrix matrix = new kmeans_hadoop.src.ContingencyMatrix(numClusters);
+        return new Matrix() {
+            public Object target() {
+                return matrix;
+            }
+
+            public int labelId(String label) {
+                return matrix.labelId(label);
+            }
+
+            public void add(int cluster, String label) {
+                matrix.add(cluster, label);
+            }
+
+            public void add(int cluster, int labelId) {
+                matrix.add(cluster, labelId);
+            }
+
+            public void add(int cluster, String label, long count) {
+                matrix.add(cluster, label, count);
+            }
+
+            public void merge(Matrix other) {
+                matrix.merge((kmeans_hadoop.src.ContingencyMatrix) other.target());
+            }
+
+            public List<String> labels() {
+                return matrix.labels();
+            }
+
+            public long count(int cluster, int labelId) {
+                return matrix.count(cluster, labelId);
+            }
+
+            public long total() {
+                return matrix.total();
+            }
+
+            public int[][] toArray() {
+                return matrix.toArray();
+            }
+
+            public double purity() {
+                return matrix.purity();
+            }
+
+            public double adjustedRandIndex() {
+                return matrix.adjustedRandIndex();
+            }
+
+            public double normalizedMutualInformation() {
+                return matrix.normalizedMutualInformation();
+            }
+        };
+    }
+
+    private static final List<IntFunction<Matrix>> TREES = List.of(ContingencyMatrixTest::utils,
+            ContingencyMatrixTest::hadoop);
+
+    /*
+     * Clusters by rows, labels a, b, c by columns. Worked by hand: 20 agreeing pairs of the
+     * 136, 44 within clusters and 40 within labels, so ARI = (20 - 44 * 40 / 136) /
+     * ((44 + 40) / 2 - 44 * 40 / 136) = 60 / 247; the majorities are 5 + 4 + 3 of 17.
+     */
+    private static final long[][] FIXTURE = {{5, 1, 2}, {1, 4, 0}, {0, 1, 3}};
+    private static final String[] FIXTURE_LABELS = {"a", "b", "c"};
+
+    private static Matrix fixture(IntFunction<Matrix> tree) {
+        Matrix matrix = tree.apply(FIXTURE.length);
+        for (int c = 0; c < FIXTURE.length; c++) {
+            for (int j = 0; j < FIXTURE_LABELS.length; j++) {
+                if (FIXTURE[c][j] > 0) {
+                    matrix.add(c, FIXTURE_LABELS[j], FIXTURE[c][j]);
+                }
+            }
+        }
+        return matrix;
+    }
+
+    @Test
+    void metricsOfAKnownMatrix() {
+        for (IntFunction<Matrix> tree : TREES) {
+            Matrix matrix = fixture(tree);
+            assertEquals(17, matrix.total());
+            assertArrayEquals(new int[][] {{5, 1, 2}, {1, 4, 0}, {0, 1, 3}}, matrix.toArray());
+            assertEquals(12.0 / 17, matrix.purity(), 1e-15);
+            assertEquals(60.0 / 247, matrix.adjustedRandIndex(), 1e-15);
+            assertEquals(0.36456177185718985, matrix.normalizedMutualInformation(), 1e-12);
+        }
+    }
+
+    @Test
+    void identicalPartitionsScoreOne() {
+        for (IntFunction<Matrix> tree : TREES) {
+            Matrix matrix = tree.apply(3);
+            matrix.add(0, "x", 4);
+            matrix.add(1, "y", 2);
+            matrix.add(2, "z", 7);
+            assertEquals(1.0, matrix.purity());
+            assertEquals(1.0, matrix.adjustedRandIndex(), 1e-15);
+            assertEquals(1.0, matrix.normalizedMutualInformation(), 1e-15);
+        }
+    }
+
+    // Splitting the points between two matrices and merging them gives the same counts and metrics
+    @Test
+    void mergingPartsGivesTheWhole() {
+        for (IntFunction<Matrix> tree : TREES) {
+            Matrix whole = fixture(tree);
+            Matrix left = tree.apply(3);
+            Matrix right = tree.apply(3);
+            // The right part sees the labels in another order, so merge has to map its columns
+            for (int j = FIXTURE_LABELS.length - 1; j >= 0; j--) {
+                for (int c = 0; c < FIXTURE.length; c++) {
+                    long count = FIXTURE[c][j];
+                    for (long i = 0; i < count; i++) {
+                        if (i % 2 == 0) {
+                            right.add(c, FIXTURE_LABELS[j]);
+                        } else {
+                            left.add(c, left.labelId(FIXTURE_LABELS[j]));
+                        }
+                    }
+                }
+            }
+            left.merge(right);
+            assertEquals(List.of("c", "b", "a"), right.labels());
+            assertEquals(whole.total(), left.total());
+            for (int c = 0; c < FIXTURE.length; c++) {
+                for (String label : FIXTURE_LABELS) {
+                    assertEquals(whole.count(c, whole.labelId(label)), left.count(c, left.labelId(label)));
+                }
+            }
+            assertEquals(whole.adjustedRandIndex(), left.adjustedRandIndex(), 1e-15);
+            assertEquals(whole.normalizedMutualInformation(), left.normalizedMutualInformation(), 1e-15);
+        }
+    }
+
+    // The columns start with room for four labels; the fifth one onwards replaces the array
+    @Test
+    void countsSurviveGrowingPastFourLabels() {
+        for (IntFunction<Matrix> tree : TREES) {
+            Matrix matrix = tree.apply(2);
+            for (int label = 0; label < 10; label++) {
+                matrix.add(label % 2, "l" + label);
+                matrix.add(1, "l" + label, label);
+            }
+            assertEquals(10, matrix.labels().size());
+            for (int label = 0; label < 10; label++) {
+                int id = matrix.labelId("l" + label);
+                assertEquals(label, id);
+                assertEquals(label % 2 == 0 ? 1 : 0, matrix.count(0, id));
+                assertEquals(label + (label % 2), matrix.count(1, id));
+            }
+            assertEquals(10 + 45, matrix.total());
+        }
+    }
+
+    @Test
+    void mergeRegistersNewLabelsPastFour() {
+        for (IntFunction<Matrix> tree : TREES) {
+            Matrix left = tree.apply(2);
+            left.add(0, "a");
+            Matrix right = tree.apply(2);
+            for (int label = 0; label < 6; label++) {
+                right.add(1, "r" + label, 2);
+            }
+            right.add(0, "a", 3);
+
+            left.merge(right);
+            assertEquals(7, left.labels().size());
+            assertEquals(4, left.count(0, left.labelId("a")));
+            for (int label = 0; label < 6; label++) {
+                assertEquals(2, left.count(1, left.labelId("r" + label)));
+            }
+            assertEquals(16, left.total());
+        }
+    }
+
+    // An id that labelId never handed out is rejected, including one inside the preallocated columns
+    @Test
+    void addByUnregisteredIdFails() {
+        for (IntFunction<Matrix> tree : TREES) {
+            Matrix matrix = tree.apply(2);
+            matrix.add(0, matrix.labelId("a"));
+            for (int id : new int[] {-1, 1, 3, 4}) {
+                IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> matrix.add(0, id));
+                assertTrue(e.getMessage().contains(Integer.toString(id)), e.getMessage());
+            }
+            assertEquals(1, matrix.total());
+        }
+    }
+
+    @Test
+    void toArrayRejectsCountsPastInt() {
+        for (IntFunction<Matrix> tree : TREES) {
+            Matrix matrix = tree.apply(1);
+            matrix.add(0, "a", Integer.MAX_VALUE + 1L);
+            assertThrows(ArithmeticException.class, matrix::toArray);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * The SIMD kernel against the scalar loops, for dimensions and centroid counts
+ * around the lane count so that the vector loops, their scalar tails and the
+ * leftover rows and columns of the register tiles all run. The Hadoop tree has
+ * its own copy of both kernels, checked through the same adapter.
+ */
+class DistanceKernelTest {
+
+    private interface Kernel {
+        double squared(double[] a, int aOffset, double[] b, int bOffset, int dim);
+
+        int nearest(double[] point, int offset, double[] centroids, int k, int dim, double[] minDist);
+
+        void dots(double[] points, int from, int to, double[] centroids, int c0, int c1, int d0, int d1, int dim,
+                double[] out, int stride);
+    }
+
+    private static Kernel of(DistanceKernel kernel) {
+        return new Kernel() {
+            public double squared(double[] a, int aOffset, double[] b, int bOffset, int dim) {
+                return kernel.squaredEuclidean(a, aOffset, b, bOffset, dim);
+            }
+
+            public int nearest(double[] point, int offset, double[] centroids, int k, int dim, double[] minDist) {
+                return kernel.nearestSquaredEuclidean(point, offset, centroids, k, dim, minDist, 0);
+            }
+
+            public void dots(double[] points, int from, int to, double[] centroids, int c0, int c1, int d0, int d1,
+                    int dim, double[] out, int stride) {
+                kernel.accumulateDots(points, from, to, centroids, c0, c1, d0, d1, dim, out, stride);
+            }
+        };
+    }
+
+    private static Kernel of(kmeans_hadoop.src.DistanceKernel kernel) {
+        return new Kernel() {
+            public double squared(double[] a, int aOffset, double[] b, int bOffset, int dim) {
+                return kernel.squaredEuclidean(a, aOffset, b, bOffset, dim);
+            }
+
+            public int nearest(double[] point, int offset, double[] centroids, int k, int dim, double[] minDist) {
+                return kernel.nearestSquaredEuclidean(point, offset, centroids, k, dim, minDist, 0);
+            }
+
+            public void dots(double[] points, int from, int to, double[] centroids, int c0, int c1, int d0, int d1,
+                    int dim, double[] out, int stride) {
+                kernel.accumulateDots(points, from, to, centroids, c0, c1, d0, d1, dim, out, stride);
+            }
+        };
+    }
+
+    private static double[] gaussian(Random random, int length) {
+        double[] values = new double[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = random.nextGaussian() * 3;
+        }
+        return values;
+    }
+
+    // The test JVM runs with the incubator module, so both trees must have picked the SIMD kernel
+    @Test
+    void vectorKernelIsLoadedWithTheModule() {
+        assertTrue(DistanceKernel.get().name().startsWith("vector"), DistanceKernel.get().name());
+        assertTrue(kmeans_hadoop.src.DistanceKernel.get().name().startsWith("vector"));
+    }
+
+    @Test
+    void utilsVectorKernelMatchesTheScalarLoops() {
+        assertMatches(of(new VectorDistanceKernel()), of(new DistanceKernel()));
+    }
+
+    @Test
+    void hadoopVectorKernelMatchesTheScalarLoops() {
+        assertMatches(of(kmeans_hadoop.src.DistanceKernel.get()), of(new kmeans_hadoop.src.DistanceKernel()));
+    }
+
+    private static void assertMatches(Kernel vector, Kernel scalar) {
+        Random random = new Random(4);
+        for (int dim = 1; dim <= 37; dim++) {
+            // Points start at an odd offset so that their loads are not aligned by accident
+            for (int k = 1; k <= 9; k++) {
+                double[] points = gaussian(random, 3 + 7 * dim);
+                double[] centroids = gaussian(random, k * dim);
+                for (int p = 0; p < 7; p++) {
+                    int offset = 3 + p * dim;
+                    double expected = scalar.squared(points, offset, centroids, 0, dim);
+                    assertEquals(expected, vector.squared(points, offset, centroids, 0, dim), 1e-12 * expected,
+                            "dim " + dim);
+
+                    double[] minDist = new double[1];
+                    int nearest = vector.nearest(points, offset, centroids, k, dim, minDist);
+                    int expectedNearest = scalar.nearest(points, offset, centroids, k, dim, null);
+                    double winner = scalar.squared(points, offset, centroids, nearest * dim, dim);
+                    assertEquals(winner, minDist[0], 1e-12 * winner, "dim " + dim);
+                    if (nearest != expectedNearest) {
+                        // Only a tie within rounding may pick another centroid
+                        assertEquals(scalar.squared(points, offset, centroids, expectedNearest * dim, dim),
+                                scalar.squared(points, offset, centroids, nearest * dim, dim), 1e-12 * expected);
+                    }
+                }
+
+                // Seven rows against a sub-range of centroids and dimensions, into a strided, non-zero output
+                double[] rows = gaussian(random, 7 * dim);
+                int c0 = k > 2 ? 1 : 0;
+                int d0 = dim > 3 ? 1 : 0;
+                int d1 = dim > 5 ? dim - 1 : dim;
+                int stride = k + 2;
+                double[] expected = gaussian(random, 7 * stride);
+                double[] actual = expected.clone();
+                scalar.dots(rows, 0, 7, centroids, c0, k, d0, d1, dim, expected, stride);
+                vector.dots(rows, 0, 7, centroids, c0, k, d0, d1, dim, actual, stride);
+                assertArrayEquals(expected, actual, 1e-11, "dim " + dim + ", k " + k);
+            }
+        }
+    }
+}
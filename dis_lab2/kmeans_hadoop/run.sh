@@ -13,8 +13,14 @@ echo "Creating build directory..."
 mkdir -p build
 
 # Step 3: Compile Java files
+# The sources need JDK 17 or newer (pattern matching, Vector API incubator module)
+JAVAC_MAJOR=$(javac -version 2>&1 | sed -E 's/^javac ([0-9]+).*/\1/')
+if [ "$JAVAC_MAJOR" -lt 17 ] 2>/dev/null; then
+    echo "JDK 17 or newer is required, found javac $JAVAC_MAJOR" >&2
+    exit 1
+fi
 echo "Compiling Java sources..."
-javac -classpath "$(hadoop classpath)" -d build src/*.java
+javac --add-modules jdk.incubator.vector -classpath "$(hadoop classpath)" -d build src/*.java
 
 # Step 4: Package into JAR file
 echo "Creating JAR file..."
@@ -30,5 +36,7 @@ hdfs dfs -put data/iris.data /user/dis_lab2/input
 
 # Step 6: Run Hadoop job
 echo "Running Hadoop KMeans job..."
+# The driver JVM runs the cached mode, so it needs the Vector API module as well
+export HADOOP_CLIENT_OPTS="--add-modules jdk.incubator.vector ${HADOOP_CLIENT_OPTS}"
 hadoop jar kmeans.jar kmeans_hadoop.src.KmeansDriver /user/dis_lab2/input/iris.data /user/dis_lab2/output
 
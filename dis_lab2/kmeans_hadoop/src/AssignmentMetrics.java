@@ -0,0 +1,94 @@
+package kmeans_hadoop.src;
+
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+/*
+ * Work done by one assignment pass: points assigned, point-to-centroid distances
+ * computed and skipped (triangle pruning, Hamerly bounds, margins of frozen clusters),
+ * the SSE, points that changed cluster, bytes written for the shuffle and, for a job,
+ * the bytes the shuffle actually moved (after combining and map-output compression).
+ * Every map task or cached chunk fills its own instance, merged once the pass is over.
+ * Values the execution mode cannot observe are -1.
+ */
+public class AssignmentMetrics {
+    long points;
+    long distances;
+    long pruned;
+    long reassigned = -1;
+    long emittedBytes = -1;
+    long shuffledBytes = -1;
+    double sse;
+
+    public long points() {
+        return points;
+    }
+
+    public long distances() {
+        return distances;
+    }
+
+    public long pruned() {
+        return pruned;
+    }
+
+    public long reassigned() {
+        return reassigned;
+    }
+
+    public long emittedBytes() {
+        return emittedBytes;
+    }
+
+    public long shuffledBytes() {
+        return shuffledBytes;
+    }
+
+    public double sse() {
+        return sse;
+    }
+
+    public void add(AssignmentMetrics other) {
+        points += other.points;
+        distances += other.distances;
+        pruned += other.pruned;
+        reassigned = add(reassigned, other.reassigned);
+        emittedBytes = add(emittedBytes, other.emittedBytes);
+        shuffledBytes = add(shuffledBytes, other.shuffledBytes);
+        sse += other.sse;
+    }
+
+    // Sum of two values that may be unknown (-1)
+    private static long add(long a, long b) {
+        return a < 0 ? b : b < 0 ? a : a + b;
+    }
+
+    // Adds the metrics of one task to the job counters
+    void increment(TaskInputOutputContext<?, ?, ?, ?> context) {
+        context.getCounter(KmeansCounters.POINTS).increment(points);
+        context.getCounter(KmeansCounters.DISTANCE_EVALUATIONS).increment(distances);
+        context.getCounter(KmeansCounters.PRUNED_EVALUATIONS).increment(pruned);
+        context.getCounter(KmeansCounters.MAPPER_EMITTED_BYTES).increment(Math.max(emittedBytes, 0));
+        context.getCounter(KmeansCounters.SSE_MICROS).increment(Math.round(sse * 1e6));
+    }
+
+    // Metrics of a finished job, from the counters its map tasks incremented
+    static AssignmentMetrics fromCounters(Counters counters) {
+        AssignmentMetrics metrics = new AssignmentMetrics();
+        metrics.points = counters.findCounter(KmeansCounters.POINTS).getValue();
+        metrics.distances = counters.findCounter(KmeansCounters.DISTANCE_EVALUATIONS).getValue();
+        metrics.pruned = counters.findCounter(KmeansCounters.PRUNED_EVALUATIONS).getValue();
+        metrics.emittedBytes = counters.findCounter(KmeansCounters.MAPPER_EMITTED_BYTES).getValue();
+        metrics.shuffledBytes = counters.findCounter(TaskCounter.MAP_OUTPUT_MATERIALIZED_BYTES).getValue();
+        metrics.sse = counters.findCounter(KmeansCounters.SSE_MICROS).getValue() / 1e6;
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d points, %d distances (%d pruned), %s bytes emitted, %s shuffled", points, distances,
+                pruned, emittedBytes < 0 ? "n/a" : Long.toString(emittedBytes),
+                shuffledBytes < 0 ? "n/a" : Long.toString(shuffledBytes));
+    }
+}
@@ -0,0 +1,153 @@
+package kmeans_hadoop.src;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/*
+ * Sequential reader of the binary dataset format written by utils.BinaryDataset
+ * (all values little-endian):
+ *   header (32 bytes): int magic, int dim, long rows, int numLabels, int unused, long dictionaryOffset
+ *   features: rows * dim doubles, row-major
+ *   labels:   rows ints, index into the label dictionary
+ *   dictionary: numLabels entries of (int byteLength, UTF-8 bytes)
+ */
+public class BinaryDatasetReader implements Closeable {
+    public static final int MAGIC = 0x31424D4B; // "KMB1"
+    public static final int HEADER_BYTES = 32;
+    public static final String EXTENSION = ".kmb";
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final FSDataInputStream features;
+    private final FSDataInputStream labels;
+    private final int dim;
+    private final long rows;
+    private final long labelsOffset;
+    private final List<String> labelNames = new ArrayList<>();
+
+    private final ByteBuffer featureBuffer;
+    private final ByteBuffer labelBuffer;
+    private long nextRow;
+    private long nextLabelRow;
+
+    public BinaryDatasetReader(FileSystem fs, Path path) throws IOException {
+        this.features = fs.open(path);
+        this.labels = fs.open(path);
+
+        byte[] headerBytes = new byte[HEADER_BYTES];
+        features.readFully(0, headerBytes);
+        ByteBuffer header = ByteBuffer.wrap(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt() != MAGIC) {
+            close();
+            throw new IOException(path + " is not a binary dataset file");
+        }
+        this.dim = header.getInt();
+        this.rows = header.getLong();
+        int numLabels = header.getInt();
+        header.getInt();
+        long dictionaryOffset = header.getLong();
+        this.labelsOffset = HEADER_BYTES + rows * 8L * dim;
+
+        labels.seek(dictionaryOffset);
+        byte[] length = new byte[4];
+        for (int i = 0; i < numLabels; i++) {
+            labels.readFully(length);
+            byte[] bytes = new byte[ByteBuffer.wrap(length).order(ByteOrder.LITTLE_ENDIAN).getInt()];
+            labels.readFully(bytes);
+            labelNames.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+
+        // Whole rows per refill so that a row never straddles two reads
+        int rowBytes = 8 * Math.max(dim, 1);
+        this.featureBuffer = ByteBuffer.allocate(Math.max(1, BUFFER_BYTES / rowBytes) * rowBytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        this.labelBuffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        seek(0);
+    }
+
+    public static boolean isBinary(String path) {
+        return path.endsWith(EXTENSION);
+    }
+
+    public int dim() {
+        return dim;
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    public List<String> labelNames() {
+        return labelNames;
+    }
+
+    // Positions both the feature and the label cursor on the given row
+    public void seek(long row) throws IOException {
+        nextRow = row;
+        nextLabelRow = row;
+        features.seek(HEADER_BYTES + row * 8L * dim);
+        labels.seek(labelsOffset + row * 4L);
+        featureBuffer.clear().limit(0);
+        labelBuffer.clear().limit(0);
+    }
+
+    private static void refill(FSDataInputStream in, ByteBuffer buffer, long bytesLeft) throws IOException {
+        int length = (int) Math.min(buffer.capacity(), bytesLeft);
+        in.readFully(buffer.array(), 0, length);
+        buffer.clear().limit(length);
+    }
+
+    // Reads the features of the next row into out, returns false after the last row
+    public boolean next(double[] out) throws IOException {
+        if (nextRow >= rows) {
+            return false;
+        }
+        if (!featureBuffer.hasRemaining()) {
+            refill(features, featureBuffer, (rows - nextRow) * 8L * dim);
+        }
+        for (int i = 0; i < dim; i++) {
+            out[i] = featureBuffer.getDouble();
+        }
+        nextRow++;
+        return true;
+    }
+
+    // Moves the feature cursor past count rows without decoding them; rows that are
+    // not buffered yet are seeked over instead of read
+    public void skip(long count) throws IOException {
+        long rowBytes = 8L * dim;
+        long target = Math.min(rows, nextRow + count);
+        long buffered = rowBytes == 0 ? 0 : featureBuffer.remaining() / rowBytes;
+        if (target - nextRow <= buffered) {
+            featureBuffer.position(featureBuffer.position() + (int) ((target - nextRow) * rowBytes));
+            nextRow = target;
+        } else {
+            nextRow = target;
+            features.seek(HEADER_BYTES + target * rowBytes);
+            featureBuffer.clear().limit(0);
+        }
+    }
+
+    // Label id of the next row, advancing independently from next()
+    public int nextLabel() throws IOException {
+        if (!labelBuffer.hasRemaining()) {
+            refill(labels, labelBuffer, (rows - nextLabelRow) * 4L);
+        }
+        nextLabelRow++;
+        return labelBuffer.getInt();
+    }
+
+    @Override
+    public void close() throws IOException {
+        features.close();
+        labels.close();
+    }
+}
@@ -0,0 +1,151 @@
+package kmeans_hadoop.src;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+
+/*
+ * Centroids of one iteration as a small binary file, shipped to the tasks through
+ * the distributed cache instead of the job configuration (all values little-endian):
+ *   header (16 bytes): int magic, int k, int dim, int unused
+ *   centroids: k * dim doubles, row-major
+ * Doubles are stored bit for bit, so the tasks see exactly the driver's centroids.
+ */
+public class CentroidFile {
+    public static final int MAGIC = 0x31434D4B; // "KMC1"
+    public static final int HEADER_BYTES = 16;
+    // File name of saved centroids, and of the symlink the distributed cache creates in a task's working directory
+    public static final String LINK = "centroids.bin";
+
+    public static void write(Configuration conf, Path path, Record[] centroids) throws IOException {
+        int k = centroids.length;
+        int dim = k == 0 ? 0 : centroids[0].features().length;
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(HEADER_BYTES + 8L * k * dim))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(k).putInt(dim).putInt(0);
+        for (Record centroid : centroids) {
+            for (double value : centroid.features()) {
+                buffer.putDouble(value);
+            }
+        }
+        try (FSDataOutputStream out = path.getFileSystem(conf).create(path, true)) {
+            out.write(buffer.array());
+        }
+    }
+
+    // Registers the file in the job's distributed cache under LINK
+    public static void addToCache(Job job, Path path) throws IOException {
+        URI uri = path.getFileSystem(job.getConfiguration()).makeQualified(path).toUri();
+        job.addCacheFile(URI.create(uri + "#" + LINK));
+    }
+
+    /*
+     * Centroids of a task: memory-maps the copy the framework localized for this job, or
+     * reads the cached file from its file system when there is none. The localized copy is
+     * looked up in the job's list of local cache files rather than by the link name in the
+     * working directory: LocalJobRunner does not replace a file of that name that is
+     * already there (such as the centroids.bin of an earlier run), which would then be read
+     * in place of this job's centroids.
+     */
+    public static Record[] load(JobContext context) throws IOException {
+        URI[] cacheFiles = context.getCacheFiles();
+        URI cached = null;
+        if (cacheFiles != null) {
+            for (URI uri : cacheFiles) {
+                if (LINK.equals(uri.getFragment())) {
+                    cached = uri;
+                }
+            }
+        }
+        if (cached == null) {
+            throw new IOException("No " + LINK + " in the distributed cache");
+        }
+
+        String name = new Path(cached.getPath()).getName();
+        for (String localized : context.getConfiguration().getTrimmedStrings(MRJobConfig.CACHE_LOCALFILES)) {
+            File local = new File(new Path(localized).toUri().getPath());
+            // YARN localizes under the link name, LocalJobRunner under the file's own name
+            if ((local.getName().equals(name) || local.getName().equals(LINK)) && local.isFile()) {
+                try (FileChannel channel = FileChannel.open(local.toPath(), StandardOpenOption.READ)) {
+                    return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), local.getPath());
+                }
+            }
+        }
+        return read(context.getConfiguration(), new Path(cached.getScheme(), cached.getAuthority(), cached.getPath()));
+    }
+
+    public static Record[] read(Configuration conf, Path path) throws IOException {
+        return decode(ByteBuffer.wrap(readBytes(conf, path)), path.toString());
+    }
+
+    // Centroids saved by a previous run: this binary layout or centroids.txt lines
+    public static Record[] readSaved(Configuration conf, Path path) throws IOException {
+        byte[] bytes = readBytes(conf, path);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.length >= HEADER_BYTES && buffer.getInt(0) == MAGIC) {
+            return decode(buffer, path.toString());
+        }
+
+        List<Record> centroids = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new StringReader(new String(bytes, StandardCharsets.UTF_8)))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (!line.isBlank()) {
+                    centroids.add(new Record(line.trim().split(",")));
+                }
+            }
+        }
+        return centroids.toArray(new Record[0]);
+    }
+
+    private static byte[] readBytes(Configuration conf, Path path) throws IOException {
+        FileSystem fs = path.getFileSystem(conf);
+        byte[] bytes = new byte[Math.toIntExact(fs.getFileStatus(path).getLen())];
+        try (FSDataInputStream in = fs.open(path)) {
+            in.readFully(0, bytes);
+        }
+        return bytes;
+    }
+
+    private static Record[] decode(ByteBuffer buffer, String name) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException(name + " is not a centroid file");
+        }
+        int k = buffer.getInt();
+        int dim = buffer.getInt();
+        buffer.getInt();
+        if (k < 0 || dim < 0 || buffer.remaining() < 8L * k * dim) {
+            throw new IOException(name + " is truncated: " + buffer.remaining() + " bytes of centroids, expected "
+                    + 8L * k * dim + " for " + k + " x " + dim);
+        }
+
+        DoubleBuffer values = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        Record[] centroids = new Record[k];
+        for (int c = 0; c < k; c++) {
+            double[] features = new double[dim];
+            values.get(features);
+            centroids[c] = new Record(features);
+        }
+        return centroids;
+    }
+}
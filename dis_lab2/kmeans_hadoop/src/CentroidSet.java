@@ -0,0 +1,147 @@
+package kmeans_hadoop.src;
+
+/*
+ * The centroids of one iteration, laid out for the assignment step.
+ * With triangle pruning enabled the pairwise centroid distances are computed
+ * once per iteration: if d(x, best) <= d(best, c) / 2 then c cannot be closer
+ * to x than best, so its distance is never evaluated (Elkan's first lemma).
+ */
+public class CentroidSet {
+
+    private final double[][] centroids;
+    private final Distance distance;
+    // Half inter-centroid distances as reduced values, comparable with the assignment step
+    private final double[][] halfReduced;
+    private final double[] halfGap;
+    // Row-major copy of the centroids for the batched kernel, when the distance is Euclidean
+    private final double[] packed;
+    private final double[] norms;
+
+    // Pruning relies on the triangle inequality, so it is dropped for non-metric distances
+    public CentroidSet(Record[] centroids, Distance distance, boolean triangle) {
+        int k = centroids.length;
+        this.distance = distance;
+        this.centroids = new double[k][];
+        for (int c = 0; c < k; c++) {
+            this.centroids[c] = centroids[c].features();
+        }
+
+        if (triangle && distance.isMetric()) {
+            this.halfReduced = new double[k][k];
+            this.halfGap = new double[k];
+            for (int a = 0; a < k; a++) {
+                double min = Double.MAX_VALUE;
+                for (int b = 0; b < k; b++) {
+                    if (a != b) {
+                        double half = distance.distance(this.centroids[a], 0, this.centroids[b]) / 2;
+                        halfReduced[a][b] = distance.toReduced(half);
+                        min = Math.min(min, half);
+                    }
+                }
+                halfGap[a] = min;
+            }
+        } else {
+            this.halfReduced = null;
+            this.halfGap = null;
+        }
+        this.packed = halfReduced == null && distance instanceof Distance.SquaredEuclidean
+                ? DistanceKernel.flatten(this.centroids) : null;
+        this.norms = packed != null ? BlockedAssignment.norms(packed, k, this.centroids[0].length) : null;
+    }
+
+    public int size() {
+        return centroids.length;
+    }
+
+    public double[] get(int c) {
+        return centroids[c];
+    }
+
+    // Half of the distance from centroid c to its closest other centroid
+    public double halfGap(int c) {
+        return halfGap[c];
+    }
+
+    public double distance(int c, double[] point, int offset) {
+        return distance.distance(point, offset, centroids[c]);
+    }
+
+    // Squared distance, the SSE contribution and k-means++ weight of a point
+    public double cost(int c, double[] point, int offset) {
+        return distance.cost(point, offset, centroids[c]);
+    }
+
+    // Cost of a point at the given (not reduced) distance from its centroid
+    public double costAt(double distance) {
+        return this.distance.toCost(this.distance.toReduced(distance));
+    }
+
+    // Index of the centroid closest to the point stored at point[offset, offset + dim),
+    // compared on reduced distances so that no square root is taken
+    public int nearest(double[] point, int offset) {
+        return nearest(point, offset, null);
+    }
+
+    // Same, adding the distances computed and pruned to metrics unless it is null
+    public int nearest(double[] point, int offset, AssignmentMetrics metrics) {
+        return nearest(point, offset, metrics, null, 0);
+    }
+
+    // Same, also writing the point's cost (see Distance.cost) to costs[costIndex] unless costs is null,
+    // converted from the winning reduced distance rather than computed again
+    public int nearest(double[] point, int offset, AssignmentMetrics metrics, double[] costs, int costIndex) {
+        int k = centroids.length;
+        if (packed != null) {
+            if (metrics != null) {
+                metrics.distances += k;
+            }
+            return DistanceKernel.get().nearestSquaredEuclidean(point, offset, packed, k, centroids[0].length,
+                    costs, costIndex);
+        }
+        int nearest = 0;
+        int pruned = 0;
+        double minDist = distance.reduced(point, offset, centroids[0]);
+
+        for (int c = 1; c < k; c++) {
+            if (halfReduced != null && halfReduced[nearest][c] >= minDist) {
+                pruned++;
+                continue;
+            }
+            double dist = distance.reduced(point, offset, centroids[c]);
+            if (dist < minDist) {
+                minDist = dist;
+                nearest = c;
+            }
+        }
+        if (metrics != null) {
+            metrics.distances += k - pruned;
+            metrics.pruned += pruned;
+        }
+        if (costs != null) {
+            costs[costIndex] = distance.toCost(minDist);
+        }
+        return nearest;
+    }
+
+    // Nearest centroid of the rows [from, to) of the row-major points, written to out from outOffset,
+    // with metrics as for nearest(). Euclidean distances without pruning go through the blocked GEMM formulation.
+    public void nearestBlock(double[] points, int from, int to, int dim, int[] out, int outOffset,
+            AssignmentMetrics metrics) {
+        nearestBlock(points, from, to, dim, out, null, outOffset, metrics);
+    }
+
+    // Same, also writing the cost of each row to costs from outOffset unless costs is null
+    public void nearestBlock(double[] points, int from, int to, int dim, int[] out, double[] costs, int outOffset,
+            AssignmentMetrics metrics) {
+        if (norms != null) {
+            BlockedAssignment.nearest(points, from, to, dim, packed, norms, out, costs, outOffset);
+            if (metrics != null) {
+                metrics.distances += (long) (to - from) * centroids.length;
+            }
+            return;
+        }
+        for (int r = from; r < to; r++) {
+            out[outOffset + r - from] = nearest(points, r * dim, metrics, costs, outOffset + r - from);
+        }
+    }
+}
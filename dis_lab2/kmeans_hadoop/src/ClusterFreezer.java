@@ -0,0 +1,55 @@
+package kmeans_hadoop.src;
+
+import java.util.BitSet;
+
+/*
+ * Freezes centroids that stopped moving. A centroid whose shift in an iteration is
+ * at most the freeze threshold keeps its position from then on: the cached engine
+ * still counts its rows but no longer sums them. As long as its rows stay the same,
+ * its mean is exactly the frozen position; once a row joins or leaves, the engine
+ * moves the centroid by that row and it thaws. Only the cached engine knows the
+ * cluster of every row, so freezing is not available in mapreduce mode, whose map
+ * tasks keep no state between jobs (a change in a cluster's size misses balanced swaps).
+ */
+public class ClusterFreezer {
+
+    private final double threshold;
+    private final BitSet frozen = new BitSet();
+
+    // A threshold of 0 disables freezing
+    public ClusterFreezer(double threshold) {
+        this.threshold = threshold;
+    }
+
+    public boolean enabled() {
+        return threshold > 0;
+    }
+
+    public BitSet frozen() {
+        return frozen;
+    }
+
+    public int frozenCount() {
+        return frozen.cardinality();
+    }
+
+    /*
+     * Freezes the centroids that moved less than the threshold and returns the shift of
+     * every centroid. changed holds the clusters whose rows changed, which thaw; it is
+     * null when they are not tracked (mapreduce mode, sampled iterations), where nothing freezes.
+     */
+    public double[] update(Record[] oldCentroids, Record[] newCentroids, BitSet changed) {
+        double[] shifts = new double[oldCentroids.length];
+        for (int c = 0; c < oldCentroids.length; c++) {
+            if (changed != null && changed.get(c)) {
+                frozen.clear(c);
+            }
+            shifts[c] = oldCentroids[c].distance(newCentroids[c]);
+            if (enabled() && changed != null && !frozen.get(c) && newCentroids[c].numRecords() > 0
+                    && shifts[c] <= threshold) {
+                frozen.set(c);
+            }
+        }
+        return shifts;
+    }
+}
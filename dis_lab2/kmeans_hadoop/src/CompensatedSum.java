@@ -0,0 +1,47 @@
+package kmeans_hadoop.src;
+
+/*
+ * Neumaier-compensated summation of vectors. Every addition to sum[i] rounds
+ * away low-order bits; they are collected in compensation[i] and added back by
+ * fold(), so the error of a sum stays around one rounding instead of growing with
+ * the number of points. With a center the point is summed relative to it
+ * (x - center), which keeps the summands small when the data sits far from the
+ * origin: the mean is then center + sum / count.
+ */
+public class CompensatedSum {
+
+    private CompensatedSum() {
+    }
+
+    // sum += values[offset..offset + sum.length) - center, center may be null
+    public static void add(double[] sum, double[] compensation, double[] values, int offset, double[] center) {
+        for (int i = 0; i < sum.length; i++) {
+            double x = center == null ? values[offset + i] : values[offset + i] - center[i];
+            add(sum, compensation, i, x);
+        }
+    }
+
+    // sum -= values[offset..offset + sum.length) - center, center may be null
+    public static void subtract(double[] sum, double[] compensation, double[] values, int offset, double[] center) {
+        for (int i = 0; i < sum.length; i++) {
+            double x = center == null ? values[offset + i] : values[offset + i] - center[i];
+            add(sum, compensation, i, -x);
+        }
+    }
+
+    private static void add(double[] sum, double[] compensation, int i, double x) {
+        double s = sum[i];
+        double t = s + x;
+        // The operand with the smaller magnitude is the one whose bits were lost
+        compensation[i] += Math.abs(s) >= Math.abs(x) ? (s - t) + x : (x - t) + s;
+        sum[i] = t;
+    }
+
+    // Adds the collected compensation into the sums and clears it
+    public static void fold(double[] sum, double[] compensation) {
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] += compensation[i];
+            compensation[i] = 0;
+        }
+    }
+}
@@ -2,40 +2,243 @@ package kmeans_hadoop.src;
 
 import java.util.*;
 
+/*
+ * Counts of (cluster, label) pairs, filled one point at a time. Labels get
+ * column ids in order of first appearance; callers that already hold label ids
+ * (e.g. the binary format) can add by id and skip the lookup. Matrices built
+ * over disjoint parts of the data can be merged, and the external clustering
+ * metrics are computed from the counts alone.
+ */
 public class ContingencyMatrix {
+    private final int numClusters;
+    private final Map<String, Integer> labelIds = new HashMap<>();
+    private final List<String> labelNames = new ArrayList<>();
+    // One column of per-cluster counts per label
+    private long[][] columns = new long[4][];
+    private String lastLabel;
+    private int lastLabelId;
+
+    public ContingencyMatrix(int numClusters) {
+        this.numClusters = numClusters;
+    }
+
     public static int[][] buildMatrix(List<Cluster> clusters, List<String> trueLabels) {
-        // Step 1: Create a mapping of true labels to indices
-        Map<String, Integer> labelMap = new HashMap<>();
-        int labelIndex = 0;
+        return of(clusters, trueLabels).toArray();
+    }
+
+    public static ContingencyMatrix of(List<Cluster> clusters, List<String> trueLabels) {
+        ContingencyMatrix matrix = new ContingencyMatrix(clusters.size());
+        // Register the labels in input order so that the columns do not depend on the clustering
         for (String label : trueLabels) {
-            if (!labelMap.containsKey(label)) {
-                labelMap.put(label, labelIndex++);
+            matrix.labelId(label);
+        }
+        for (Cluster cluster : clusters) {
+            for (Record record : cluster.getPoints()) {
+                matrix.add(cluster.getIndex(), trueLabels.get(record.index()));
+            }
+        }
+        return matrix;
+    }
+
+    // Column of the label, registering it on first use
+    public int labelId(String label) {
+        // Labels usually come in runs, so the previous one saves the hash lookup
+        if (label.equals(lastLabel)) {
+            return lastLabelId;
+        }
+        Integer id = labelIds.get(label);
+        if (id == null) {
+            id = labelNames.size();
+            labelIds.put(label, id);
+            labelNames.add(label);
+            if (id == columns.length) {
+                columns = Arrays.copyOf(columns, columns.length * 2);
             }
+            columns[id] = new long[numClusters];
         }
-        int numClusters = clusters.size();
-        int numClasses = labelMap.size();
+        lastLabel = label;
+        lastLabelId = id;
+        return id;
+    }
 
-        // Step 2: Initialize contingency matrix
-        int[][] matrix = new int[numClusters][numClasses];
+    // The id is taken before indexing since registering a label may replace the columns array
+    public void add(int cluster, String label) {
+        int id = labelId(label);
+        columns[id][cluster]++;
+    }
 
-        // Step 3: Fill the matrix using correct record indices
-        for (Cluster cluster : clusters) {
-            int clusterIdx = cluster.getIndex();
-            for (Record record : cluster.getPoints()) {
-                int recordIndex = record.index(); // Get index from record
-                String trueLabel = trueLabels.get(recordIndex); // Get correct label
-                int classIdx = labelMap.get(trueLabel);
-                matrix[clusterIdx][classIdx]++;
+    // The id must come from labelId: columns past the registered labels are not allocated
+    public void add(int cluster, int labelId) {
+        if (labelId < 0 || labelId >= labelNames.size()) {
+            throw new IllegalArgumentException("Label id " + labelId + " is not registered, "
+                    + labelNames.size() + " labels are");
+        }
+        columns[labelId][cluster]++;
+    }
+
+    public void add(int cluster, String label, long count) {
+        int id = labelId(label);
+        columns[id][cluster] += count;
+    }
+
+    // Adds the counts of a matrix built over another part of the data
+    public void merge(ContingencyMatrix other) {
+        for (int j = 0; j < other.labelNames.size(); j++) {
+            int id = labelId(other.labelNames.get(j));
+            long[] column = columns[id];
+            long[] otherColumn = other.columns[j];
+            for (int c = 0; c < numClusters; c++) {
+                column[c] += otherColumn[c];
+            }
+        }
+    }
+
+    public int numClusters() {
+        return numClusters;
+    }
+
+    public List<String> labels() {
+        return Collections.unmodifiableList(labelNames);
+    }
+
+    public long count(int cluster, int labelId) {
+        return columns[labelId][cluster];
+    }
+
+    public long total() {
+        long total = 0;
+        for (int j = 0; j < labelNames.size(); j++) {
+            for (long count : columns[j]) {
+                total += count;
             }
         }
+        return total;
+    }
 
+    public int[][] toArray() {
+        int[][] matrix = new int[numClusters][labelNames.size()];
+        for (int j = 0; j < labelNames.size(); j++) {
+            for (int c = 0; c < numClusters; c++) {
+                matrix[c][j] = Math.toIntExact(columns[j][c]);
+            }
+        }
         return matrix;
     }
 
+    // Fraction of points whose cluster's majority label is their own label
+    public double purity() {
+        long total = total();
+        if (total == 0) {
+            return 0;
+        }
+        long majority = 0;
+        for (int c = 0; c < numClusters; c++) {
+            long max = 0;
+            for (int j = 0; j < labelNames.size(); j++) {
+                max = Math.max(max, columns[j][c]);
+            }
+            majority += max;
+        }
+        return (double) majority / total;
+    }
+
+    private static double pairs(double n) {
+        return n * (n - 1) / 2;
+    }
+
+    // Rand index adjusted for chance (Hubert and Arabie): 1 for identical partitions, ~0 for random ones
+    public double adjustedRandIndex() {
+        double[] clusterSizes = clusterSizes();
+        double[] labelSizes = labelSizes();
+        double index = 0;
+        for (int j = 0; j < labelNames.size(); j++) {
+            for (long count : columns[j]) {
+                index += pairs(count);
+            }
+        }
+        double clusterPairs = 0;
+        for (double size : clusterSizes) {
+            clusterPairs += pairs(size);
+        }
+        double labelPairs = 0;
+        for (double size : labelSizes) {
+            labelPairs += pairs(size);
+        }
+
+        double allPairs = pairs(total());
+        if (allPairs == 0) {
+            return 1.0;
+        }
+        double expected = clusterPairs * labelPairs / allPairs;
+        double max = (clusterPairs + labelPairs) / 2;
+        if (max == expected) {
+            return 1.0;
+        }
+        return (index - expected) / (max - expected);
+    }
+
+    // Mutual information normalized by the arithmetic mean of the two entropies
+    public double normalizedMutualInformation() {
+        double total = total();
+        if (total == 0) {
+            return 0;
+        }
+        double[] clusterSizes = clusterSizes();
+        double[] labelSizes = labelSizes();
+
+        double mutualInformation = 0;
+        for (int j = 0; j < labelNames.size(); j++) {
+            for (int c = 0; c < numClusters; c++) {
+                double count = columns[j][c];
+                if (count > 0) {
+                    mutualInformation += count / total * Math.log(count * total / (clusterSizes[c] * labelSizes[j]));
+                }
+            }
+        }
+        double mean = (entropy(clusterSizes, total) + entropy(labelSizes, total)) / 2;
+        return mean == 0 ? 1.0 : Math.max(0, mutualInformation / mean);
+    }
+
+    private static double entropy(double[] sizes, double total) {
+        double entropy = 0;
+        for (double size : sizes) {
+            if (size > 0) {
+                entropy -= size / total * Math.log(size / total);
+            }
+        }
+        return entropy;
+    }
+
+    private double[] clusterSizes() {
+        double[] sizes = new double[numClusters];
+        for (int j = 0; j < labelNames.size(); j++) {
+            for (int c = 0; c < numClusters; c++) {
+                sizes[c] += columns[j][c];
+            }
+        }
+        return sizes;
+    }
+
+    private double[] labelSizes() {
+        double[] sizes = new double[labelNames.size()];
+        for (int j = 0; j < sizes.length; j++) {
+            for (long count : columns[j]) {
+                sizes[j] += count;
+            }
+        }
+        return sizes;
+    }
+
+    public void printMetrics() {
+        System.out.printf("Purity: %.4f%n", purity());
+        System.out.printf("Adjusted Rand index: %.4f%n", adjustedRandIndex());
+        System.out.printf("Normalized mutual information: %.4f%n", normalizedMutualInformation());
+    }
+
     public static void printMatrix(int[][] matrix) {
         System.out.println("Contingency Matrix:");
         for (int[] row : matrix) {
             System.out.println(Arrays.toString(row));
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,135 @@
+package kmeans_hadoop.src;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Parses decimal numbers straight from the UTF-8 bytes of a Text line, without
+ * building Strings. Numbers with at most 15 significant digits and a decimal
+ * exponent within [-22, 22] are converted exactly with one correctly rounded
+ * multiplication or division (Clinger's fast path); anything else falls back
+ * to Double.parseDouble so the result always matches it bit for bit.
+ */
+public class CsvParser {
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    // Number of feature columns of a line: every field but the trailing label
+    public static int countFeatures(byte[] bytes, int length) {
+        int commas = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == ',') {
+                commas++;
+            }
+        }
+        return commas;
+    }
+
+    // Parses the leading feature columns of a line into out, returns how many were parsed
+    public static int parseFeatures(byte[] bytes, int length, double[] out) {
+        int field = 0;
+        int start = 0;
+        for (int i = 0; i < length && field < out.length; i++) {
+            if (bytes[i] == ',') {
+                out[field++] = parseDouble(bytes, start, i);
+                start = i + 1;
+            }
+        }
+        return field;
+    }
+
+    public static double parseDouble(byte[] bytes, int start, int end) {
+        int i = start;
+        while (i < end && bytes[i] == ' ') {
+            i++;
+        }
+        int last = end;
+        while (last > i && bytes[last - 1] == ' ') {
+            last--;
+        }
+
+        boolean negative = false;
+        if (i < last && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean seenDigit = false;
+        boolean seenDot = false;
+
+        for (; i < last; i++) {
+            byte c = bytes[i];
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (mantissa == 0 && c == '0') {
+                    // Leading zeros only shift the exponent after the decimal point
+                    if (seenDot) {
+                        exponent--;
+                    }
+                    continue;
+                }
+                if (digits == MAX_EXACT_DIGITS) {
+                    return slowParse(bytes, start, end);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (seenDot) {
+                    exponent--;
+                }
+            } else if (c == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                break;
+            }
+        }
+
+        if (!seenDigit) {
+            return slowParse(bytes, start, end);
+        }
+
+        if (i < last) {
+            if (bytes[i] != 'e' && bytes[i] != 'E' || i + 1 == last) {
+                return slowParse(bytes, start, end);
+            }
+            i++;
+            boolean negativeExponent = false;
+            if (bytes[i] == '-' || bytes[i] == '+') {
+                negativeExponent = bytes[i] == '-';
+                i++;
+            }
+            int explicit = 0;
+            int exponentDigits = 0;
+            for (; i < last; i++) {
+                byte c = bytes[i];
+                if (c < '0' || c > '9' || exponentDigits == 4) {
+                    return slowParse(bytes, start, end);
+                }
+                explicit = explicit * 10 + (c - '0');
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return slowParse(bytes, start, end);
+            }
+            exponent += negativeExponent ? -explicit : explicit;
+        }
+
+        double value = mantissa;
+        if (mantissa != 0) {
+            if (exponent < -22 || exponent > 22) {
+                return slowParse(bytes, start, end);
+            }
+            value = exponent < 0 ? value / POWERS_OF_TEN[-exponent] : value * POWERS_OF_TEN[exponent];
+        }
+        return negative ? -value : value;
+    }
+
+    private static double slowParse(byte[] bytes, int start, int end) {
+        return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+    }
+}
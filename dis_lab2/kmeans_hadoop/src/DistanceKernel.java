@@ -0,0 +1,99 @@
+package kmeans_hadoop.src;
+
+/*
+ * Squared Euclidean distance loops shared by the assignment steps. This class is
+ * the scalar implementation; when the JVM runs with
+ * --add-modules jdk.incubator.vector the SIMD subclass VectorDistanceKernel is
+ * loaded instead. It is only referenced by name, so without the module nothing
+ * links against the incubator classes. -Dkmeans.vector=false forces the scalar one.
+ */
+public class DistanceKernel {
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final DistanceKernel INSTANCE = load();
+
+    public static DistanceKernel get() {
+        return INSTANCE;
+    }
+
+    private static DistanceKernel load() {
+        if (Boolean.parseBoolean(System.getProperty("kmeans.vector", "true"))
+                && ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                return (DistanceKernel) Class.forName(DistanceKernel.class.getPackageName() + ".VectorDistanceKernel")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Fall through to the scalar loops
+            }
+        }
+        return new DistanceKernel();
+    }
+
+    public String name() {
+        return "scalar";
+    }
+
+    public double squaredEuclidean(double[] a, int aOffset, double[] b, int bOffset, int dim) {
+        double dist = 0.0;
+        for (int i = 0; i < dim; i++) {
+            double diff = a[aOffset + i] - b[bOffset + i];
+            dist += diff * diff;
+        }
+        return dist;
+    }
+
+    // Index of the closest of the k centroids stored row-major in centroids[0, k * dim)
+    public int nearestSquaredEuclidean(double[] point, int offset, double[] centroids, int k, int dim) {
+        return nearestSquaredEuclidean(point, offset, centroids, k, dim, null, 0);
+    }
+
+    // Same, also writing the squared distance to that centroid to minDist[minIndex] unless minDist is null
+    public int nearestSquaredEuclidean(double[] point, int offset, double[] centroids, int k, int dim,
+            double[] minDist, int minIndex) {
+        int nearest = 0;
+        double best = Double.MAX_VALUE;
+        for (int c = 0; c < k; c++) {
+            double dist = squaredEuclidean(point, offset, centroids, c * dim, dim);
+            if (dist < best) {
+                best = dist;
+                nearest = c;
+            }
+        }
+        if (minDist != null) {
+            minDist[minIndex] = best;
+        }
+        return nearest;
+    }
+
+    // For the points p in rows [from, to) and the centroids c in [c0, c1), both row-major,
+    // adds their dot product over dimensions [d0, d1) to out[(p - from) * stride + c - c0]
+    public void accumulateDots(double[] points, int from, int to, double[] centroids, int c0, int c1,
+            int d0, int d1, int dim, double[] out, int stride) {
+        scalarDots(points, from, to, centroids, c0, c1, d0, d1, dim, out, stride, 0);
+    }
+
+    // Scalar accumulateDots writing from out[outOffset], also used for the edges of the SIMD tiles
+    protected void scalarDots(double[] points, int from, int to, double[] centroids, int c0, int c1,
+            int d0, int d1, int dim, double[] out, int stride, int outOffset) {
+        for (int p = from; p < to; p++) {
+            int row = outOffset + (p - from) * stride - c0;
+            for (int c = c0; c < c1; c++) {
+                double dot = 0.0;
+                for (int i = d0; i < d1; i++) {
+                    dot += points[p * dim + i] * centroids[c * dim + i];
+                }
+                out[row + c] += dot;
+            }
+        }
+    }
+
+    // Packs the centroids row-major for nearestSquaredEuclidean
+    public static double[] flatten(double[][] centroids) {
+        int dim = centroids.length == 0 ? 0 : centroids[0].length;
+        double[] flat = new double[centroids.length * dim];
+        for (int c = 0; c < centroids.length; c++) {
+            System.arraycopy(centroids[c], 0, flat, c * dim, dim);
+        }
+        return flat;
+    }
+}
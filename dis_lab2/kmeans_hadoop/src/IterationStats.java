@@ -0,0 +1,103 @@
+package kmeans_hadoop.src;
+
+/*
+ * What one iteration did: how far every centroid moved (Euclidean, like the
+ * stopping criterion), how many clusters are frozen, the AssignmentMetrics of the
+ * pass (SSE, points that changed cluster, distances, bytes emitted and shuffled), the time the
+ * job or in-memory pass took and the time spent writing and reading centroids.
+ * Values the execution mode cannot observe are NaN / -1.
+ */
+public class IterationStats {
+    public static final String TSV_HEADER = "iteration\tmax_shift\tsse\treassigned\tfrozen\tpoints\tdistances"
+            + "\tpruned\temitted_bytes\tshuffled_bytes\tjob_ms\tcentroid_io_ms";
+
+    private final int iteration;
+    private final double[] shifts;
+    private final double maxShift;
+    private final int frozen;
+    private final AssignmentMetrics metrics;
+    private final long jobMillis;
+    private final long centroidIoMillis;
+
+    public IterationStats(int iteration, double[] shifts, int frozen, AssignmentMetrics metrics, long jobMillis,
+            long centroidIoMillis) {
+        this.iteration = iteration;
+        this.shifts = shifts;
+        this.frozen = frozen;
+        this.metrics = metrics;
+        this.jobMillis = jobMillis;
+        this.centroidIoMillis = centroidIoMillis;
+        double max = 0;
+        for (double shift : shifts) {
+            max = Math.max(max, shift);
+        }
+        this.maxShift = max;
+    }
+
+    public int iteration() {
+        return iteration;
+    }
+
+    public double shift(int c) {
+        return shifts[c];
+    }
+
+    public double maxShift() {
+        return maxShift;
+    }
+
+    public double sse() {
+        return metrics.sse();
+    }
+
+    public long reassigned() {
+        return metrics.reassigned();
+    }
+
+    public int frozen() {
+        return frozen;
+    }
+
+    public AssignmentMetrics metrics() {
+        return metrics;
+    }
+
+    public long jobMillis() {
+        return jobMillis;
+    }
+
+    public long centroidIoMillis() {
+        return centroidIoMillis;
+    }
+
+    // Number of centroids that moved by more than the threshold
+    public int moving(double threshold) {
+        int moving = 0;
+        for (double shift : shifts) {
+            if (shift > threshold) {
+                moving++;
+            }
+        }
+        return moving;
+    }
+
+    private static String orNa(long value) {
+        return value < 0 ? "n/a" : Long.toString(value);
+    }
+
+    // One line under TSV_HEADER
+    public String toTsv() {
+        return String.join("\t", Integer.toString(iteration), Double.toString(maxShift),
+                Double.toString(sse()), Long.toString(reassigned()), Integer.toString(frozen),
+                Long.toString(metrics.points()), Long.toString(metrics.distances()), Long.toString(metrics.pruned()),
+                Long.toString(metrics.emittedBytes()), Long.toString(metrics.shuffledBytes()), Long.toString(jobMillis),
+                Long.toString(centroidIoMillis));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Iteration %d: max shift %.6g, SSE %s, reassigned %s, frozen %d/%d, %s, job %d ms, "
+                + "centroid I/O %s ms", iteration, maxShift, Double.isNaN(sse()) ? "n/a" : String.format("%.6g", sse()),
+                orNa(reassigned()), frozen, shifts.length, metrics, jobMillis, orNa(centroidIoMillis));
+    }
+}
@@ -0,0 +1,169 @@
+package kmeans_hadoop.src;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.*;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.*;
+import org.apache.hadoop.mapreduce.lib.output.*;
+
+/*
+ * Final assignment pass, run as a map-only job so that no point goes through the driver.
+ * Every mapper writes the cluster of each of its points to the job output
+ * (KEY: file \t byte offset of the CSV line or row of the binary file, VALUE: cluster),
+ * since offsets repeat across the files of a directory input, and, once per split, its
+ * ContingencyMatrix to the "counts" named output as cluster \t count \t file \t firstKey \t label
+ * lines. The driver merges those counts; labels are ordered by their first (file, offset),
+ * so the matrix does not depend on the order the splits finish or are listed in.
+ */
+public class KmeansAssignment {
+
+    private static final String COUNTS = "counts";
+
+    // Contingency matrix of the points against the final centroids
+    public static ContingencyMatrix run(Configuration conf, String inputPath, Record[] centroids, String outputPath)
+            throws IOException, InterruptedException {
+        Path output = new Path(outputPath);
+        Path centroidPath = new Path(outputPath + "-" + CentroidFile.LINK);
+        CentroidFile.write(conf, centroidPath, centroids);
+
+        Job job = Job.getInstance(conf, "Assignment");
+        job.setJarByClass(KmeansAssignment.class);
+        job.setMapperClass(AssignMapper.class);
+        job.setNumReduceTasks(0);
+        job.setInputFormatClass(KmeansBinaryInputFormat.formatClass(conf, inputPath));
+        job.setOutputFormatClass(TextOutputFormat.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(IntWritable.class);
+        MultipleOutputs.addNamedOutput(job, COUNTS, TextOutputFormat.class, Text.class, Text.class);
+        CentroidFile.addToCache(job, centroidPath);
+        FileInputFormat.addInputPath(job, new Path(inputPath));
+        FileOutputFormat.setOutputPath(job, output);
+
+        try {
+            if (!job.waitForCompletion(true)) {
+                throw new IOException("Assignment pass failed.");
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+
+        FileSystem fs = FileSystem.get(conf);
+        fs.delete(centroidPath, false);
+
+        // Counts of every split, merged in input order of the labels' first occurrence
+        List<String[]> counts = new ArrayList<>();
+        for (FileStatus file : fs.listStatus(output)) {
+            if (!file.getPath().getName().startsWith(COUNTS)) {
+                continue;
+            }
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(fs.open(file.getPath())))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    counts.add(line.split("\t", 5));
+                }
+            }
+            fs.delete(file.getPath(), false);
+        }
+
+        counts.sort(Comparator.<String[], String>comparing(fields -> fields[2])
+                .thenComparingLong(fields -> Long.parseLong(fields[3])));
+        ContingencyMatrix matrix = new ContingencyMatrix(centroids.length);
+        for (String[] fields : counts) {
+            matrix.add(Integer.parseInt(fields[0]), fields[4], Long.parseLong(fields[1]));
+        }
+        return matrix;
+    }
+
+    public static class AssignMapper extends Mapper<LongWritable, Writable, Text, IntWritable> {
+        private final Record buffer = new Record();
+        private final Text point = new Text();
+        private final IntWritable cluster = new IntWritable();
+        // File of the split, which the offsets of the input keys are relative to
+        private String file = "";
+        private CentroidSet centroids;
+        private MultipleOutputs<Text, IntWritable> outputs;
+        private ContingencyMatrix counts;
+        // Input key of the first point of each label column
+        private final List<Long> firstKeys = new ArrayList<>();
+        // Labels of the binary format are read alongside the rows of the split
+        private BinaryDatasetReader labelReader;
+        private boolean labelsPositioned;
+
+        @Override
+        public void setup(Context context) throws IOException {
+            Configuration conf = context.getConfiguration();
+            centroids = new CentroidSet(CentroidFile.load(context), Distance.fromConfig(conf),
+                    conf.get("assignment", "standard").equals("triangle"));
+            outputs = new MultipleOutputs<>(context);
+            counts = new ContingencyMatrix(centroids.size());
+
+            if (context.getInputSplit() instanceof FileSplit) {
+                Path path = ((FileSplit) context.getInputSplit()).getPath();
+                file = path.toString();
+                if (KmeansBinaryInputFormat.formatClass(conf, path.toString()) == KmeansBinaryInputFormat.class) {
+                    labelReader = new BinaryDatasetReader(path.getFileSystem(conf), path);
+                }
+            }
+        }
+
+        @Override
+        public void map(LongWritable key, Writable value, Context context) throws IOException, InterruptedException {
+            Record record = Record.fromInput(value, buffer);
+            if (record == null) {
+                return;
+            }
+
+            int label;
+            if (labelReader != null) {
+                if (!labelsPositioned) {
+                    labelReader.seek(key.get());
+                    labelsPositioned = true;
+                }
+                label = counts.labelId(labelReader.labelNames().get(labelReader.nextLabel()));
+            } else {
+                Text line = (Text) value;
+                byte[] bytes = line.getBytes();
+                int start = line.getLength();
+                while (start > 0 && bytes[start - 1] != ',') {
+                    start--;
+                }
+                label = counts.labelId(Text.decode(bytes, start, line.getLength() - start));
+            }
+            if (label == firstKeys.size()) {
+                firstKeys.add(key.get());
+            }
+
+            int nearest = centroids.nearest(record.features(), 0);
+            counts.add(nearest, label);
+
+            point.set(file + "\t" + key.get());
+            cluster.set(nearest);
+            context.write(point, cluster);
+        }
+
+        @Override
+        public void cleanup(Context context) throws IOException, InterruptedException {
+            List<String> labels = counts.labels();
+            for (int j = 0; j < labels.size(); j++) {
+                for (int c = 0; c < counts.numClusters(); c++) {
+                    if (counts.count(c, j) > 0) {
+                        outputs.write(COUNTS, new Text(Integer.toString(c)), new Text(
+                                counts.count(c, j) + "\t" + file + "\t" + firstKeys.get(j) + "\t" + labels.get(j)));
+                    }
+                }
+            }
+            outputs.close();
+            if (labelReader != null) {
+                labelReader.close();
+            }
+        }
+    }
+}
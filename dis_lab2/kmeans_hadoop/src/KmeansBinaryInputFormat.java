@@ -0,0 +1,120 @@
+package kmeans_hadoop.src;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+
+/*
+ * Reads the binary dataset format: KEY is the row number and VALUE the row's
+ * features, decoded straight from the packed doubles. Byte splits are snapped
+ * to rows: a split owns every row whose first byte lies inside it.
+ * With sample.fraction set (the driver does so for mini-batch iterations) the
+ * reader only returns a Bernoulli sample of the rows, drawn per iteration and
+ * task: it jumps over the rows in between by geometric gaps, so unsampled rows
+ * are neither decoded nor, when the gap exceeds its buffer, read at all.
+ */
+public class KmeansBinaryInputFormat extends FileInputFormat<LongWritable, Record> {
+    public static final String SAMPLE_FRACTION = "sample.fraction";
+
+    // Input format of the job, from the "input.format" property or the input file extension
+    @SuppressWarnings("rawtypes")
+    public static Class<? extends InputFormat> formatClass(Configuration conf, String inputPath) {
+        String format = conf.get("input.format", BinaryDatasetReader.isBinary(inputPath) ? "binary" : "text");
+        return format.equals("binary") ? KmeansBinaryInputFormat.class : TextInputFormat.class;
+    }
+
+    @Override
+    public RecordReader<LongWritable, Record> createRecordReader(InputSplit split, TaskAttemptContext context) {
+        return new BinaryRecordReader();
+    }
+
+    public static class BinaryRecordReader extends RecordReader<LongWritable, Record> {
+        private BinaryDatasetReader reader;
+        private final LongWritable key = new LongWritable();
+        private final Record value = new Record();
+        private double[] features;
+        private long firstRow;
+        private long endRow;
+        private long row;
+        private double fraction;
+        private Random sampler;
+
+        @Override
+        public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+            FileSplit split = (FileSplit) genericSplit;
+            Path path = split.getPath();
+            reader = new BinaryDatasetReader(path.getFileSystem(context.getConfiguration()), path);
+
+            long rowBytes = 8L * Math.max(reader.dim(), 1);
+            long start = split.getStart() - BinaryDatasetReader.HEADER_BYTES;
+            long end = split.getStart() + split.getLength() - BinaryDatasetReader.HEADER_BYTES;
+            firstRow = Math.min(reader.rows(), Math.max(0, (start + rowBytes - 1) / rowBytes));
+            endRow = Math.min(reader.rows(), Math.max(0, (end + rowBytes - 1) / rowBytes));
+
+            features = new double[reader.dim()];
+            row = firstRow;
+            reader.seek(firstRow);
+
+            Configuration conf = context.getConfiguration();
+            fraction = conf.getDouble(SAMPLE_FRACTION, 0);
+            if (fraction > 0 && fraction < 1) {
+                int task = context.getTaskAttemptID().getTaskID().getId();
+                sampler = new Random(conf.getInt("iteration", 0) * 1_000_003L + task);
+            }
+        }
+
+        // Rows to pass over before the next sampled one: geometric with success probability fraction
+        private long gap() {
+            return (long) Math.floor(Math.log(1 - sampler.nextDouble()) / Math.log(1 - fraction));
+        }
+
+        @Override
+        public boolean nextKeyValue() throws IOException {
+            if (sampler != null && row < endRow) {
+                long skipped = Math.min(endRow - row, gap());
+                if (skipped > 0) {
+                    reader.skip(skipped);
+                    row += skipped;
+                }
+            }
+            if (row >= endRow || !reader.next(features)) {
+                return false;
+            }
+            key.set(row++);
+            value.set(features);
+            return true;
+        }
+
+        @Override
+        public LongWritable getCurrentKey() {
+            return key;
+        }
+
+        @Override
+        public Record getCurrentValue() {
+            return value;
+        }
+
+        @Override
+        public float getProgress() {
+            return endRow == firstRow ? 1.0f : (float) (row - firstRow) / (endRow - firstRow);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,611 @@
+package kmeans_hadoop.src;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/*
+ * Execution mode that reads every input split once and keeps it in memory
+ * as a packed double[] partition. Each iteration runs the mapper and combiner
+ * logic over the cached partitions on a worker pool, and only the k partial
+ * sums of every partition are merged, like the reducer does for one job.
+ * Listeners receive the AssignmentMetrics of every iteration, the in-memory
+ * counterpart of the job counters. Sums are compensated like the job's, and
+ * centered on the current centroids with accumulation.centered.
+ */
+public class KmeansCachedEngine implements Closeable, KmeansParallelInit.Passes {
+
+    // Called on the iterating thread once an iteration's centroids are computed
+    public interface Listener {
+        void iterationDone(int iteration, AssignmentMetrics metrics, long millis);
+    }
+
+    // Rows of one input split stored row-major
+    private static class Partition {
+        // Largest array the VM reliably allocates
+        private static final int MAX_PARTITION_DOUBLES = Integer.MAX_VALUE - 8;
+
+        // The split the rows come from, for error messages
+        private final String source;
+        private double[] data = new double[1024];
+        private int rows;
+        private int dim = -1;
+
+        // Cluster of every row in the last full iteration, -1 before the first
+        private int[] assignments;
+        // Hamerly bounds per row, only allocated with triangle assignment
+        private double[] upperBounds;
+        private double[] lowerBounds;
+        // Gap between the nearest and second nearest centroid, only kept when clusters can freeze
+        private double[] margins;
+
+        Partition(String source) {
+            this.source = source;
+        }
+
+        // A row of another dimension would shift every later row of the packed array
+        void add(double[] features) throws IOException {
+            if (dim < 0) {
+                dim = features.length;
+            } else if (features.length != dim) {
+                throw new IOException(source + ": row " + rows + " has " + features.length
+                        + " features, expected " + dim);
+            }
+            long needed = (long) (rows + 1) * dim;
+            if (needed > data.length) {
+                if (needed > MAX_PARTITION_DOUBLES) {
+                    throw new IllegalStateException("An input split holds more than " + MAX_PARTITION_DOUBLES
+                            + " values, the most one partition can cache;"
+                            + " lower mapreduce.input.fileinputformat.split.maxsize");
+                }
+                data = Arrays.copyOf(data, (int) Math.min(MAX_PARTITION_DOUBLES, Math.max(2L * data.length, needed)));
+            }
+            System.arraycopy(features, 0, data, rows * dim, dim);
+            rows++;
+        }
+    }
+
+    private final List<Partition> partitions = new ArrayList<>();
+    private long totalRows;
+    private final ExecutorService pool;
+    private final int chunkRows;
+    private final Distance distance;
+    private final boolean triangle;
+    private final boolean blocked;
+    // Rows are summed relative to their centroid (x - c)
+    private final boolean centered;
+    // Rows keep their margin so that points of frozen clusters can be skipped
+    private final boolean margins;
+    private double[][] previous;
+    private AssignmentMetrics lastMetrics = new AssignmentMetrics();
+    private BitSet lastChanged;
+    private int iterations;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public KmeansCachedEngine(Configuration conf, String inputPath) throws IOException, InterruptedException {
+        int threads = conf.getInt("cached.threads", Runtime.getRuntime().availableProcessors());
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.distance = Distance.fromConfig(conf);
+        // Hamerly bounds rely on the triangle inequality
+        this.triangle = conf.get("assignment", "standard").equals("triangle") && distance.isMetric();
+        this.blocked = conf.get("assignment", "standard").equals("blocked");
+        this.centered = conf.getBoolean("accumulation.centered", false);
+        this.margins = !triangle && !blocked && distance.isMetric()
+                && conf.getDouble("freeze.threshold", 0) > 0 && conf.getDouble("minibatch.fraction", 0) == 0;
+
+        Job job = Job.getInstance(conf);
+        FileInputFormat.addInputPath(job, new Path(inputPath));
+        InputFormat<?, ?> format = ReflectionUtils.newInstance(KmeansBinaryInputFormat.formatClass(conf, inputPath), conf);
+        List<InputSplit> splits = format.getSplits(job);
+
+        List<Future<Partition>> loads = new ArrayList<>();
+        for (InputSplit split : splits) {
+            loads.add(pool.submit(() -> readSplit(format, split, job.getConfiguration())));
+        }
+        for (Future<Partition> load : loads) {
+            Partition partition;
+            try {
+                partition = await(load);
+            } catch (IOException | InterruptedException e) {
+                // No one can close an engine whose constructor failed
+                pool.shutdownNow();
+                throw e;
+            }
+            if (partition.rows > 0) {
+                partition.assignments = new int[partition.rows];
+                Arrays.fill(partition.assignments, -1);
+                if (triangle) {
+                    partition.upperBounds = new double[partition.rows];
+                    partition.lowerBounds = new double[partition.rows];
+                } else if (margins) {
+                    partition.margins = new double[partition.rows];
+                }
+                partitions.add(partition);
+                totalRows += partition.rows;
+            }
+        }
+
+        // Several chunks per worker keep the pool busy even with a single split
+        this.chunkRows = (int) Math.max(4096, totalRows / (threads * 4L));
+    }
+
+    private static Partition readSplit(InputFormat<?, ?> format, InputSplit split, Configuration conf)
+            throws IOException, InterruptedException {
+        TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+        Partition partition = new Partition(split.toString());
+        Record buffer = new Record();
+        try (RecordReader<?, ?> reader = format.createRecordReader(split, context)) {
+            reader.initialize(split, context);
+            while (reader.nextKeyValue()) {
+                Record record = Record.fromInput((Writable) reader.getCurrentValue(), buffer);
+                if (record != null) {
+                    partition.add(record.features());
+                }
+            }
+        }
+        return partition;
+    }
+
+    private static <T> T await(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    // Partial sums of one chunk in the layout emitted by KmeansCombiner, with the chunk's statistics
+    private static class ChunkResult {
+        private final Record[] partials;
+        private final AssignmentMetrics metrics = new AssignmentMetrics();
+        // Clusters that gained or lost a row
+        private final BitSet changed = new BitSet();
+
+        ChunkResult(int k) {
+            this.partials = new Record[k];
+        }
+    }
+
+    private static ChunkResult assignChunk(Partition partition, int from, int to, CentroidSet centroids,
+            double[] drift, BitSet frozen, Random sampler, double batchFraction, boolean blocked, boolean centered) {
+        int k = centroids.size();
+        int dim = partition.dim;
+        double[][] sums = new double[k][dim];
+        double[][] compensations = new double[k][dim];
+        int[] counts = new int[k];
+        // Frozen clusters that lost a row, whose negative sum is emitted even without a row of their own
+        BitSet touched = new BitSet(k);
+        double[] data = partition.data;
+        ChunkResult result = new ChunkResult(k);
+        AssignmentMetrics metrics = result.metrics;
+        metrics.reassigned = sampler == null ? 0 : -1;
+
+        // A sampled chunk skips most rows, so only full chunks are assigned as one block
+        int[] block = null;
+        double[] blockCosts = null;
+        if (blocked && sampler == null) {
+            block = new int[to - from];
+            blockCosts = new double[to - from];
+            centroids.nearestBlock(data, from, to, dim, block, blockCosts, 0, metrics);
+        }
+        // Cost of the current row as found by its assignment, NaN when the bounds skipped every distance
+        double[] rowCost = new double[1];
+
+        for (int r = from; r < to; r++) {
+            if (sampler != null && sampler.nextDouble() >= batchFraction) {
+                continue;
+            }
+            int offset = r * dim;
+            int previous = partition.assignments[r];
+            int nearest;
+            rowCost[0] = Double.NaN;
+            if (block != null) {
+                nearest = block[r - from];
+                rowCost[0] = blockCosts[r - from];
+            } else if (sampler != null) {
+                nearest = centroids.nearest(data, offset, metrics, rowCost, 0);
+            } else if (partition.upperBounds != null) {
+                nearest = drift == null ? scanAllCentroids(partition, r, centroids, metrics, rowCost)
+                        : assignWithBounds(partition, r, centroids, drift, metrics, rowCost);
+            } else if (partition.margins != null) {
+                nearest = assignWithMargin(partition, r, centroids, drift, frozen, metrics, rowCost);
+            } else {
+                nearest = centroids.nearest(data, offset, metrics, rowCost, 0);
+            }
+
+            metrics.points++;
+            metrics.sse += Double.isNaN(rowCost[0]) ? centroids.cost(nearest, data, offset) : rowCost[0];
+            // Sampled iterations only see part of the rows, so they leave the assignments alone
+            if (sampler == null) {
+                if (nearest != previous) {
+                    metrics.reassigned++;
+                    result.changed.set(nearest);
+                    if (previous >= 0) {
+                        result.changed.set(previous);
+                    }
+                }
+                partition.assignments[r] = nearest;
+            }
+            // A frozen cluster only sums the rows that joined it minus the rows that left it
+            if (sampler == null && previous >= 0 && previous != nearest && frozen.get(previous)) {
+                CompensatedSum.subtract(sums[previous], compensations[previous], data, offset,
+                        centered ? centroids.get(previous) : null);
+                touched.set(previous);
+            }
+            counts[nearest]++;
+            if (frozen.get(nearest) && nearest == previous) {
+                continue;
+            }
+
+            CompensatedSum.add(sums[nearest], compensations[nearest], data, offset,
+                    centered ? centroids.get(nearest) : null);
+        }
+
+        for (int c = 0; c < k; c++) {
+            if (counts[c] > 0 || touched.get(c)) {
+                CompensatedSum.fold(sums[c], compensations[c]);
+                result.partials[c] = new Record(sums[c], counts[c]);
+            }
+        }
+        return result;
+    }
+
+    private static int scanAllCentroids(Partition partition, int r, CentroidSet centroids,
+            AssignmentMetrics metrics, double[] rowCost) {
+        metrics.distances += centroids.size();
+        double first = Double.MAX_VALUE;
+        double second = Double.MAX_VALUE;
+        int nearest = 0;
+
+        for (int c = 0; c < centroids.size(); c++) {
+            double dist = centroids.distance(c, partition.data, r * partition.dim);
+            if (dist < first) {
+                second = first;
+                first = dist;
+                nearest = c;
+            } else if (dist < second) {
+                second = dist;
+            }
+        }
+        partition.assignments[r] = nearest;
+        partition.upperBounds[r] = first;
+        partition.lowerBounds[r] = second;
+        rowCost[0] = centroids.costAt(first);
+        return nearest;
+    }
+
+    /*
+     * Hamerly's algorithm: the bounds of the previous iteration are loosened by how far
+     * the centroids moved (drift[k] holds the largest move, drift[k + 1] the second largest),
+     * and the row is only rescanned when its upper bound may exceed the distance to the
+     * nearest competitor.
+     */
+    private static int assignWithBounds(Partition partition, int r, CentroidSet centroids, double[] drift,
+            AssignmentMetrics metrics, double[] rowCost) {
+        int k = centroids.size();
+        int assigned = partition.assignments[r];
+        partition.upperBounds[r] += drift[assigned];
+        partition.lowerBounds[r] -= drift[assigned] == drift[k] ? drift[k + 1] : drift[k];
+
+        double bound = Math.max(centroids.halfGap(assigned), partition.lowerBounds[r]);
+        if (partition.upperBounds[r] <= bound) {
+            metrics.pruned += k;
+            return assigned;
+        }
+        partition.upperBounds[r] = centroids.distance(assigned, partition.data, r * partition.dim);
+        metrics.distances++;
+        if (partition.upperBounds[r] <= bound) {
+            metrics.pruned += k - 1;
+            rowCost[0] = centroids.costAt(partition.upperBounds[r]);
+            return assigned;
+        }
+        return scanAllCentroids(partition, r, centroids, metrics, rowCost);
+    }
+
+    /*
+     * Skips rows whose centroid is frozen while the gap to the runner-up, loosened every
+     * iteration by how far the centroids moved, stays positive: a frozen centroid does not
+     * move, so no other one can have overtaken it. Other rows are rescanned.
+     */
+    private static int assignWithMargin(Partition partition, int r, CentroidSet centroids, double[] drift,
+            BitSet frozen, AssignmentMetrics metrics, double[] rowCost) {
+        int k = centroids.size();
+        int assigned = partition.assignments[r];
+        if (drift != null && assigned >= 0) {
+            partition.margins[r] -= drift[assigned] + (drift[assigned] == drift[k] ? drift[k + 1] : drift[k]);
+            if (frozen.get(assigned) && partition.margins[r] > 0) {
+                metrics.pruned += k;
+                return assigned;
+            }
+        }
+        metrics.distances += k;
+
+        double first = Double.MAX_VALUE;
+        double second = Double.MAX_VALUE;
+        int nearest = 0;
+        for (int c = 0; c < k; c++) {
+            double dist = centroids.distance(c, partition.data, r * partition.dim);
+            if (dist < first) {
+                second = first;
+                first = dist;
+                nearest = c;
+            } else if (dist < second) {
+                second = dist;
+            }
+        }
+        partition.margins[r] = second - first;
+        rowCost[0] = centroids.costAt(first);
+        return nearest;
+    }
+
+    // Distance moved by each centroid since the previous iteration, followed by the two largest moves
+    private double[] computeDrift(double[][] current) {
+        int k = current.length;
+        double[] drift = new double[k + 2];
+        for (int c = 0; c < k; c++) {
+            drift[c] = distance.distance(current[c], 0, previous[c]);
+            if (drift[c] > drift[k]) {
+                drift[k + 1] = drift[k];
+                drift[k] = drift[c];
+            } else if (drift[c] > drift[k + 1]) {
+                drift[k + 1] = drift[c];
+            }
+        }
+        return drift;
+    }
+
+    // Runs one iteration over the cached partitions and returns the new centroids
+    public Record[] iterate(Record[] centroids) throws IOException, InterruptedException {
+        return iterate(centroids, 0, 0, new BitSet());
+    }
+
+    /*
+     * With a positive batchFraction only that fraction of the rows, drawn from the seed,
+     * is assigned, and the result holds the batch mean and size of every cluster.
+     * Sampled iterations skip the rows they do not draw, so they cannot keep bounds.
+     * Rows that stay in a frozen cluster are counted but not summed; its centroid only moves
+     * by the rows that joined or left it, weighted against the centroid's previous count.
+     */
+    public Record[] iterate(Record[] centroids, double batchFraction, long seed, BitSet frozen)
+            throws IOException, InterruptedException {
+        long passStart = System.currentTimeMillis();
+        boolean sampled = batchFraction > 0;
+        CentroidSet current = new CentroidSet(centroids, distance, triangle && !sampled);
+        double[] drift = null;
+        if ((triangle || margins) && !sampled) {
+            double[][] positions = new double[centroids.length][];
+            for (int c = 0; c < centroids.length; c++) {
+                positions[c] = centroids[c].features().clone();
+            }
+            if (previous != null) {
+                drift = computeDrift(positions);
+            }
+            previous = positions;
+        }
+        double[] moves = drift;
+
+        List<Future<ChunkResult>> tasks = new ArrayList<>();
+        int chunk = 0;
+        for (Partition partition : partitions) {
+            for (int from = 0; from < partition.rows; from += chunkRows) {
+                int start = from;
+                int end = Math.min(partition.rows, from + chunkRows);
+                Random sampler = sampled ? new Random(seed * 1_000_003L + chunk) : null;
+                tasks.add(pool.submit(() -> assignChunk(partition, start, end, current, moves, frozen, sampler,
+                        batchFraction, blocked, centered)));
+                chunk++;
+            }
+        }
+
+        Record[] totals = new Record[centroids.length];
+        AssignmentMetrics metrics = new AssignmentMetrics();
+        lastChanged = sampled ? null : new BitSet();
+        for (Future<ChunkResult> task : tasks) {
+            ChunkResult result = await(task);
+            metrics.add(result.metrics);
+            if (!sampled) {
+                lastChanged.or(result.changed);
+            }
+            Record[] partials = result.partials;
+            for (int c = 0; c < partials.length; c++) {
+                if (partials[c] == null) {
+                    continue;
+                }
+                if (totals[c] == null) {
+                    totals[c] = partials[c];
+                } else {
+                    totals[c].sum(partials[c]);
+                }
+            }
+        }
+
+        Record[] newCentroids = new Record[centroids.length];
+        for (int c = 0; c < centroids.length; c++) {
+            if (totals[c] == null || totals[c].numRecords() == 0) {
+                // Keep the previous position of a cluster that lost all its points
+                newCentroids[c] = new Record(centroids[c].features().clone(), 0);
+            } else if (frozen.get(c)) {
+                // Unchanged points keep the mean exactly, otherwise it moves by the rows that changed
+                int count = totals[c].numRecords();
+                double[] position = centroids[c].features().clone();
+                if (lastChanged.get(c)) {
+                    double[] delta = totals[c].features();
+                    int previousCount = centroids[c].numRecords();
+                    for (int i = 0; i < position.length; i++) {
+                        // Centered deltas already hold the rows that changed relative to the centroid
+                        position[i] = centered ? position[i] + delta[i] / count
+                                : (position[i] * previousCount + delta[i]) / count;
+                    }
+                }
+                newCentroids[c] = new Record(position, count);
+            } else {
+                int count = totals[c].numRecords();
+                totals[c].average();
+                double[] mean = totals[c].features();
+                if (centered) {
+                    double[] position = centroids[c].features();
+                    for (int i = 0; i < mean.length; i++) {
+                        mean[i] += position[i];
+                    }
+                }
+                newCentroids[c] = new Record(mean, count);
+            }
+        }
+
+        lastMetrics = metrics;
+        iterations++;
+        long millis = System.currentTimeMillis() - passStart;
+        for (Listener listener : listeners) {
+            listener.iterationDone(iterations, metrics, millis);
+        }
+        return newCentroids;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Metrics of the last iteration: no bytes are emitted, and a sampled one cannot count reassignments
+    public AssignmentMetrics metrics() {
+        return lastMetrics;
+    }
+
+    // SSE of the rows against the centroids they were assigned to in the last iteration
+    public double sse() {
+        return lastMetrics.sse();
+    }
+
+    // Rows that changed cluster in the last iteration, -1 for a sampled one
+    public long reassigned() {
+        return lastMetrics.reassigned();
+    }
+
+    // Clusters whose rows changed in the last iteration, null for a sampled one
+    public BitSet changed() {
+        return lastChanged;
+    }
+
+    private Record row(Partition partition, int r) {
+        int offset = r * partition.dim;
+        return new Record(Arrays.copyOfRange(partition.data, offset, offset + partition.dim));
+    }
+
+    @Override
+    public Record pickUniform(long seed) throws IOException {
+        if (totalRows == 0) {
+            throw new IOException("No records loaded.");
+        }
+        long target = (long) (new Random(seed).nextDouble() * totalRows);
+        for (Partition partition : partitions) {
+            if (target < partition.rows) {
+                return row(partition, (int) target);
+            }
+            target -= partition.rows;
+        }
+        Partition last = partitions.get(partitions.size() - 1);
+        return row(last, last.rows - 1);
+    }
+
+    @Override
+    public double sample(List<Record> candidates, double oversampling, double cost, long seed, List<Record> sampled)
+            throws IOException, InterruptedException {
+        CentroidSet current = new CentroidSet(candidates.toArray(new Record[0]), distance, false);
+        List<Future<List<Record>>> tasks = new ArrayList<>();
+        double[] costs = new double[chunkCount()];
+
+        int chunk = 0;
+        for (Partition partition : partitions) {
+            for (int from = 0; from < partition.rows; from += chunkRows) {
+                int index = chunk++;
+                int start = from;
+                int end = Math.min(partition.rows, from + chunkRows);
+                tasks.add(pool.submit(() -> {
+                    Random random = new Random(seed * 31 + index);
+                    List<Record> chosen = new ArrayList<>();
+                    double[] rowCost = new double[1];
+                    for (int r = start; r < end; r++) {
+                        current.nearest(partition.data, r * partition.dim, null, rowCost, 0);
+                        double contribution = rowCost[0];
+                        costs[index] += contribution;
+                        if (cost > 0 && random.nextDouble() < oversampling * contribution / cost) {
+                            chosen.add(row(partition, r));
+                        }
+                    }
+                    return chosen;
+                }));
+            }
+        }
+
+        for (Future<List<Record>> task : tasks) {
+            sampled.addAll(await(task));
+        }
+        double newCost = 0;
+        for (double c : costs) {
+            newCost += c;
+        }
+        return newCost;
+    }
+
+    @Override
+    public long[] weigh(List<Record> candidates) throws IOException, InterruptedException {
+        CentroidSet current = new CentroidSet(candidates.toArray(new Record[0]), distance, false);
+        List<Future<long[]>> tasks = new ArrayList<>();
+        for (Partition partition : partitions) {
+            for (int from = 0; from < partition.rows; from += chunkRows) {
+                int start = from;
+                int end = Math.min(partition.rows, from + chunkRows);
+                tasks.add(pool.submit(() -> {
+                    long[] counts = new long[current.size()];
+                    for (int r = start; r < end; r++) {
+                        counts[current.nearest(partition.data, r * partition.dim)]++;
+                    }
+                    return counts;
+                }));
+            }
+        }
+
+        long[] weights = new long[candidates.size()];
+        for (Future<long[]> task : tasks) {
+            long[] counts = await(task);
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] += counts[i];
+            }
+        }
+        return weights;
+    }
+
+    private int chunkCount() {
+        int chunks = 0;
+        for (Partition partition : partitions) {
+            chunks += (partition.rows + chunkRows - 1) / chunkRows;
+        }
+        return chunks;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
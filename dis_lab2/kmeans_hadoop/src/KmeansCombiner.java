@@ -19,8 +19,9 @@ public class KmeansCombiner extends Reducer<IntWritable, Record, IntWritable, Re
         if (!it.hasNext())
             return;
 
-        // Start with the first record
+        // Start with the first record; sums are written in double precision even if the points were not
         Record sum = Record.copy(it.next());
+        sum.setSinglePrecision(false);
 
         // Sum remaining records
         while (it.hasNext()) {
@@ -28,5 +29,6 @@ public class KmeansCombiner extends Reducer<IntWritable, Record, IntWritable, Re
         }
 
         context.write(centroid, sum);
+        context.getCounter(KmeansCounters.COMBINER_EMITTED_BYTES).increment(4 + sum.serializedSize());
     }
 }
@@ -0,0 +1,16 @@
+package kmeans_hadoop.src;
+
+// Custom counters of the iteration jobs
+public enum KmeansCounters {
+    // SSE of the map task's points against their centroids, in millionths (counters only hold longs)
+    SSE_MICROS,
+    // Points assigned by the map tasks
+    POINTS,
+    // Point-to-centroid distances computed while assigning, and skipped by triangle pruning
+    DISTANCE_EVALUATIONS,
+    PRUNED_EVALUATIONS,
+    // Serialized bytes of the pairs written by each phase (key and value, or the output line)
+    MAPPER_EMITTED_BYTES,
+    COMBINER_EMITTED_BYTES,
+    REDUCER_EMITTED_BYTES
+}
@@ -1,35 +1,25 @@
 package kmeans_hadoop.src;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.*;
 import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.util.GenericOptionsParser;
+import org.apache.hadoop.util.LineReader;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.mapreduce.lib.input.*;
 import org.apache.hadoop.mapreduce.lib.output.*;
 
 public class KmeansDriver {
 
-    private static final String CENTROID_PREFIX = "centroid.";
-
-    private static boolean hasConverged(Record[] oldCentroids, Record[] newCentroids, double threshold) {
-        for (int i = 0; i < oldCentroids.length; i++) {
-            if (oldCentroids[i].distance(newCentroids[i]) > threshold) {
-                return false;
-            }
-        }
-        return true;
-    }
-
-    private static void updateCentroidConfig(Configuration conf, Record[] centroids) {
-        for (int i = 0; i < centroids.length; i++) {
-            conf.set(CENTROID_PREFIX + i, centroids[i].toString());
-        }
-    }
-
     private static Record[] initCentroids(Configuration conf, String inputPath, int k, int dataSetSize)
             throws IOException {
         Record[] centroids = new Record[k];
@@ -46,6 +36,18 @@ public class KmeansDriver {
         Path path = new Path(inputPath);
         FileSystem hdfs = FileSystem.get(conf);
 
+        if (KmeansBinaryInputFormat.formatClass(conf, inputPath) == KmeansBinaryInputFormat.class) {
+            try (BinaryDatasetReader reader = new BinaryDatasetReader(hdfs, path)) {
+                for (int i = 0; i < k; i++) {
+                    double[] features = new double[reader.dim()];
+                    reader.seek(positions.get(i));
+                    reader.next(features);
+                    centroids[i] = new Record(features);
+                }
+            }
+            return centroids;
+        }
+
         try (BufferedReader br = new BufferedReader(new InputStreamReader(hdfs.open(path)))) {
             int row = 0, i = 0;
             String line;
@@ -62,20 +64,21 @@ public class KmeansDriver {
         return centroids;
     }
 
+    // Reducer output: SequenceFiles of (cluster, mean with its count), the doubles stored bit for bit
     private static Record[] readCentroidsFromHDFS(Configuration conf, int k, String outputPath) throws IOException {
         Record[] centroids = new Record[k];
         FileSystem hdfs = FileSystem.get(conf);
         FileStatus[] files = hdfs.listStatus(new Path(outputPath));
+        IntWritable id = new IntWritable();
+        Record mean = new Record();
 
         for (FileStatus file : files) {
             Path path = file.getPath();
-            if (!path.getName().equals("_SUCCESS")) {
-                try (BufferedReader br = new BufferedReader(new InputStreamReader(hdfs.open(path)))) {
-                    String line;
-                    while ((line = br.readLine()) != null) {
-                        String[] keyValue = line.split("\t");
-                        int id = Integer.parseInt(keyValue[0]);
-                        centroids[id] = new Record(keyValue[1].split(","));
+            if (path.getName().startsWith("part-")) {
+                try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(path))) {
+                    while (reader.next(id, mean)) {
+                        centroids[id.get()] = merge(centroids[id.get()], mean.features().clone(),
+                                mean.numRecords());
                     }
                 }
             }
@@ -84,6 +87,157 @@ public class KmeansDriver {
         return centroids;
     }
 
+    // Mean of a cluster whose pieces were reduced separately (see ReduceLayout), weighted by count
+    private static Record merge(Record partial, double[] mean, int count) {
+        if (partial == null) {
+            return new Record(mean, count);
+        }
+        int total = partial.numRecords() + count;
+        double[] merged = partial.features();
+        for (int i = 0; i < merged.length; i++) {
+            merged[i] = total == 0 ? merged[i] : (merged[i] * partial.numRecords() + mean[i] * count) / total;
+        }
+        return new Record(merged, total);
+    }
+
+    // Splits of a job over the input; their number of map tasks bounds the partial sums per cluster
+    private static List<InputSplit> inputSplits(Configuration conf, String inputPath)
+            throws IOException, InterruptedException {
+        Job job = Job.getInstance(conf);
+        FileInputFormat.addInputPath(job, new Path(inputPath));
+        InputFormat<?, ?> format = ReflectionUtils.newInstance(KmeansBinaryInputFormat.formatClass(conf, inputPath),
+                conf);
+        return format.getSplits(job);
+    }
+
+    // Rows of the input: the row counts of the binary headers, or the bytes of the CSV splits
+    // over the mean line length of the first file's leading lines
+    private static long inputRows(Configuration conf, String inputPath, List<InputSplit> splits) throws IOException {
+        Set<Path> files = new LinkedHashSet<>();
+        long bytes = 0;
+        for (InputSplit split : splits) {
+            files.add(((FileSplit) split).getPath());
+            bytes += ((FileSplit) split).getLength();
+        }
+        if (files.isEmpty()) {
+            return 0;
+        }
+
+        if (KmeansBinaryInputFormat.formatClass(conf, inputPath) == KmeansBinaryInputFormat.class) {
+            long rows = 0;
+            for (Path file : files) {
+                try (BinaryDatasetReader reader = new BinaryDatasetReader(file.getFileSystem(conf), file)) {
+                    rows += reader.rows();
+                }
+            }
+            return rows;
+        }
+        Path first = files.iterator().next();
+        long sampledBytes = 0;
+        int sampledRows = 0;
+        try (LineReader reader = new LineReader(first.getFileSystem(conf).open(first), conf)) {
+            Text line = new Text();
+            int read;
+            while (sampledRows < 1000 && (read = reader.readLine(line)) > 0) {
+                sampledBytes += read;
+                sampledRows++;
+            }
+        }
+        return sampledBytes == 0 ? 0 : Math.round((double) bytes * sampledRows / sampledBytes);
+    }
+
+    /*
+     * Runs one iteration as a job. metrics receives what the map tasks counted, millis[0] the
+     * time of the job itself and millis[1] the time spent writing and reading back centroids.
+     */
+    private static Record[] runIteration(Configuration conf, String inputPath, String outputPath,
+            Record[] centroids, int iteration, ReduceLayout layout, AssignmentMetrics metrics, long[] millis)
+            throws IOException, InterruptedException, ClassNotFoundException {
+        int k = centroids.length;
+        conf.setInt("iteration", iteration);
+        long ioStart = System.currentTimeMillis();
+        Path centroidPath = new Path(outputPath + "-" + CentroidFile.LINK);
+        CentroidFile.write(conf, centroidPath, centroids);
+        millis[1] = System.currentTimeMillis() - ioStart;
+
+        Job job = Job.getInstance(conf, "Iteration_" + iteration);
+        job.setJarByClass(KmeansDriver.class);
+        job.setMapperClass(KmeansMapper.class);
+        // The mapper already emits one partial sum per centroid when it combines in memory
+        if (!conf.getBoolean("inmapper.combining", true) && conf.getBoolean("combiner", true)) {
+            job.setCombinerClass(KmeansCombiner.class);
+        }
+        job.setReducerClass(KmeansReducer.class);
+        job.setPartitionerClass(KmeansPartitioner.class);
+        job.setNumReduceTasks(layout.reducers());
+        CentroidFile.addToCache(job, centroidPath);
+
+        job.setInputFormatClass(KmeansBinaryInputFormat.formatClass(conf, inputPath));
+        // A binary input draws the mini-batch in the record reader, before the rows are read
+        double batchFraction = conf.getDouble("minibatch.fraction", 0);
+        if (batchFraction > 0 && job.getInputFormatClass() == KmeansBinaryInputFormat.class) {
+            job.getConfiguration().setDouble(KmeansBinaryInputFormat.SAMPLE_FRACTION, batchFraction);
+        }
+        job.setOutputFormatClass(SequenceFileOutputFormat.class);
+        job.setOutputKeyClass(IntWritable.class);
+        job.setOutputValueClass(Record.class);
+
+        FileInputFormat.addInputPath(job, new Path(inputPath));
+        FileOutputFormat.setOutputPath(job, new Path(outputPath));
+
+        long jobStart = System.currentTimeMillis();
+        if (!job.waitForCompletion(true)) {
+            throw new IOException("Iteration " + iteration + " failed.");
+        }
+        millis[0] = System.currentTimeMillis() - jobStart;
+
+        metrics.add(AssignmentMetrics.fromCounters(job.getCounters()));
+        ioStart = System.currentTimeMillis();
+        Record[] newCentroids = readCentroidsFromHDFS(conf, k, outputPath);
+        FileSystem.get(conf).delete(centroidPath, false);
+        millis[1] += System.currentTimeMillis() - ioStart;
+        boolean centered = conf.getBoolean("accumulation.centered", false);
+        for (int i = 0; i < k; i++) {
+            // Centered sums average x - c, so the reducer wrote the move of the centroid
+            if (centered && newCentroids[i] != null) {
+                double[] mean = newCentroids[i].features();
+                double[] previous = centroids[i].features();
+                for (int d = 0; d < mean.length; d++) {
+                    mean[d] += previous[d];
+                }
+            }
+            // A cluster that received no points produces no reducer output
+            if (newCentroids[i] == null) {
+                newCentroids[i] = new Record(centroids[i].features().clone(), 0);
+            }
+        }
+        return newCentroids;
+    }
+
+    /*
+     * Mini-batch update: every centroid moves towards the mean of its batch points
+     * with a per-centroid learning rate of batchCount / pointsSeenSoFar, so centroids
+     * that already absorbed many points move less.
+     */
+    private static Record[] applyLearningRates(Record[] oldCentroids, Record[] batchMeans, long[] seen) {
+        Record[] centroids = new Record[oldCentroids.length];
+        for (int c = 0; c < oldCentroids.length; c++) {
+            int batchCount = batchMeans[c].numRecords();
+            double[] position = oldCentroids[c].features().clone();
+            if (batchCount > 0) {
+                seen[c] += batchCount;
+                double rate = (double) batchCount / seen[c];
+                double[] mean = batchMeans[c].features();
+                for (int i = 0; i < position.length; i++) {
+                    position[i] += rate * (mean[i] - position[i]);
+                }
+            }
+            centroids[c] = new Record(position);
+        }
+        return centroids;
+    }
+
+    // centroids.txt for reading, centroids.bin keeps the exact doubles for a warm start
     private static void writeFinalCentroids(Configuration conf, Record[] centroids, String output) throws IOException {
         FileSystem hdfs = FileSystem.get(conf);
         try (BufferedWriter bw = new BufferedWriter(
@@ -93,144 +247,228 @@ public class KmeansDriver {
                 bw.newLine();
             }
         }
+        CentroidFile.write(conf, new Path(output + "/" + CentroidFile.LINK), centroids);
     }
 
-    public static void main(String[] args) throws Exception {
-        long start = System.currentTimeMillis();
-        long startIC, endIC;
+    // iterations.tsv: one IterationStats line per iteration, for plotting or comparing runs
+    private static void writeIterationReport(Configuration conf, List<IterationStats> history, String output)
+            throws IOException {
+        FileSystem hdfs = FileSystem.get(conf);
+        try (BufferedWriter bw = new BufferedWriter(
+                new OutputStreamWriter(hdfs.create(new Path(output + "/iterations.tsv"), true)))) {
+            bw.write(IterationStats.TSV_HEADER);
+            bw.newLine();
+            for (IterationStats stats : history) {
+                bw.write(stats.toTsv());
+                bw.newLine();
+            }
+        }
+    }
 
-        Configuration conf = new Configuration();
-        conf.addResource(new Path("config.xml"));
-        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+    // Centroids of a previous run given by init.centroids, checked against k and the input before any job runs
+    private static Record[] loadInitialCentroids(Configuration conf, String path, int k, String inputPath)
+            throws IOException, InterruptedException {
+        Record[] centroids = CentroidFile.readSaved(conf, new Path(path));
+        if (centroids.length != k) {
+            throw new IOException(path + " holds " + centroids.length + " centroids, expected k = " + k);
+        }
+        int dim = inputDimension(conf, inputPath);
+        for (Record centroid : centroids) {
+            if (centroid.features().length != dim) {
+                throw new IOException(path + " holds centroids of dimension " + centroid.features().length
+                        + ", but the rows of " + inputPath + " have " + dim + " features");
+            }
+        }
+        return centroids;
+    }
 
-        if (otherArgs.length != 2) {
-            System.err.println("Usage: <input> <output>");
-            System.exit(1);
+    // Features per row, from the binary header or the first non-empty CSV line of the first input file
+    private static int inputDimension(Configuration conf, String inputPath) throws IOException, InterruptedException {
+        List<InputSplit> splits = inputSplits(conf, inputPath);
+        if (splits.isEmpty()) {
+            throw new IOException(inputPath + " holds no rows");
+        }
+        Path file = ((FileSplit) splits.get(0)).getPath();
+        FileSystem fs = file.getFileSystem(conf);
+        if (KmeansBinaryInputFormat.formatClass(conf, inputPath) == KmeansBinaryInputFormat.class) {
+            try (BinaryDatasetReader reader = new BinaryDatasetReader(fs, file)) {
+                return reader.dim();
+            }
+        }
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(fs.open(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                int dim = CsvParser.countFeatures(bytes, bytes.length);
+                if (dim > 0) {
+                    return dim;
+                }
+            }
+        }
+        throw new IOException(file + " holds no rows");
+    }
+
+    // Outcome of one run, for callers that start it from code (e.g. the scaling harness)
+    public static class Summary {
+        public final int iterations;
+        public final long totalMillis;
+        public final long initMillis;
+        public final double sse;
+        public final List<IterationStats> history;
+        public final ContingencyMatrix evaluation;
+
+        Summary(int iterations, long totalMillis, long initMillis, List<IterationStats> history,
+                ContingencyMatrix evaluation) {
+            this.iterations = iterations;
+            this.totalMillis = totalMillis;
+            this.initMillis = initMillis;
+            this.sse = history.isEmpty() ? Double.NaN : history.get(history.size() - 1).sse();
+            this.history = history;
+            this.evaluation = evaluation;
         }
+    }
+
+    // Clusters inputPath with the settings of conf and writes centroids and contingency matrix under output
+    public static Summary run(Configuration conf, String inputPath, String output)
+            throws IOException, InterruptedException, ClassNotFoundException {
+        long start = System.currentTimeMillis();
+        long startIC, endIC;
 
-        final String inputPath = otherArgs[0];
-        final String outputPath = otherArgs[1] + "/temp";
+        final String outputPath = output + "/temp";
         final int datasetSize = conf.getInt("dataset", 150);
         final int k = conf.getInt("k", 4);
         final double threshold = conf.getDouble("threshold", 0.0001);
         final int maxIterations = conf.getInt("max.iteration", 100);
+        final String mode = conf.get("mode", "cached");
+        final String init = conf.get("init", "kmeans||");
+        final double batchFraction = conf.getDouble("minibatch.fraction", 0);
+        // Mini-batch centroids keep jittering with the batch noise, so they stop on their own threshold
+        final double stopThreshold = batchFraction > 0 ? conf.getDouble("minibatch.threshold", threshold) : threshold;
 
         Record[] oldCentroids = new Record[k];
         Record[] newCentroids = new Record[k];
 
-        // Initialize centroids
-        startIC = System.currentTimeMillis();
-        newCentroids = initCentroids(conf, inputPath, k, datasetSize);
-        endIC = System.currentTimeMillis();
-        updateCentroidConfig(conf, newCentroids);
+        // Warm start: centroids.txt or centroids.bin of an earlier run, overrides init
+        final String initCentroidsPath = conf.getTrimmed("init.centroids", "");
+        Record[] initialCentroids = null;
+        if (!initCentroidsPath.isEmpty()) {
+            initialCentroids = loadInitialCentroids(conf, initCentroidsPath, k, inputPath);
+        }
+
+        // "cached" reads the input once and iterates in memory, "mapreduce" runs one job per iteration
+        KmeansCachedEngine engine = null;
+        if (!mode.equals("mapreduce")) {
+            engine = new KmeansCachedEngine(conf, inputPath);
+        }
 
         int iteration = 0;
         boolean converged = false;
-
-        while (!converged && iteration < maxIterations) {
-            iteration++;
-
-            Job job = Job.getInstance(conf, "Iteration_" + iteration);
-            job.setJarByClass(KmeansDriver.class);
-            job.setMapperClass(KmeansMapper.class);
-            job.setCombinerClass(KmeansCombiner.class);
-            job.setReducerClass(KmeansReducer.class);
-            job.setNumReduceTasks(k);
-
-            job.setInputFormatClass(TextInputFormat.class);
-            job.setOutputFormatClass(TextOutputFormat.class);
-            job.setOutputKeyClass(IntWritable.class);
-            job.setOutputValueClass(Record.class);
-
-            FileInputFormat.addInputPath(job, new Path(inputPath));
-            FileOutputFormat.setOutputPath(job, new Path(outputPath));
-
-            if (!job.waitForCompletion(true)) {
-                System.err.println("Iteration " + iteration + " failed.");
-                System.exit(1);
-            }
-
-            for (int i = 0; i < k; i++) {
-                oldCentroids[i] = Record.copy(newCentroids[i]);
-            }
-
-            newCentroids = readCentroidsFromHDFS(conf, k, outputPath);
-            converged = hasConverged(oldCentroids, newCentroids, threshold);
-
-            if (!converged) {
-                updateCentroidConfig(conf, newCentroids);
-            }
+        long[] seen = new long[k];
+        // Freezing needs the cluster of every row, which only the cached engine keeps across
+        // iterations; mini-batch iterations do not assign every row either
+        ClusterFreezer freezer = new ClusterFreezer(
+                engine == null || batchFraction > 0 ? 0 : conf.getDouble("freeze.threshold", 0));
+        List<IterationStats> history = new ArrayList<>();
+
+        // Reducers are sized by the cluster loads, which pre-aggregation caps at one value per map task;
+        // before the first iteration the loads are shares of the rows the input is estimated to hold
+        int maps = 0;
+        long inputRows = 0;
+        if (engine == null) {
+            List<InputSplit> splits = inputSplits(conf, inputPath);
+            maps = splits.size();
+            inputRows = inputRows(conf, inputPath, splits);
         }
+        boolean preAggregated = conf.getBoolean("inmapper.combining", true) || conf.getBoolean("combiner", true);
+        String lastLayout = null;
+
+        try {
+            // Initialize centroids
+            startIC = System.currentTimeMillis();
+            if (initialCentroids != null) {
+                newCentroids = initialCentroids;
+            } else if (init.equals("random")) {
+                newCentroids = initCentroids(conf, inputPath, k, datasetSize);
+            } else {
+                String initPath = output + "/init";
+                KmeansParallelInit.Passes passes = engine != null ? engine
+                        : new KmeansParallelInit.JobPasses(conf, inputPath, initPath);
+                newCentroids = KmeansParallelInit.select(passes, k, conf.getInt("init.rounds", 5),
+                        conf.getDouble("init.oversampling", 2.0 * k), conf.getLong("init.seed", 11),
+                        Distance.fromConfig(conf));
+                FileSystem.get(conf).delete(new Path(initPath), true);
+            }
+            endIC = System.currentTimeMillis();
 
-        writeFinalCentroids(conf, newCentroids, otherArgs[1]);
-
-        long totalTime = System.currentTimeMillis() - start;
-        long icTime = endIC - startIC;
-
-        System.out.println("Execution time: " + totalTime + " ms");
-        System.out.println("Initial centroid selection time: " + icTime + " ms");
-        System.out.println("Total iterations: " + iteration);
-
-        // here I want to read file called centroids.txt from HDFS and construct the
-        // clusters
-        // read centroids.txt
-        // create record for each centroid
-        // calculate the clusters based on the nearest distance
-        // contruct KmeansWrapper
-        // get labels
-        // Run Contingency Matrix
-        // int[][] matrix = ContingencyMatrix.buildMatrix(KMeansWrapper.getClusters(),
-        // labels);
-        // ContingencyMatrix.printMatrix(matrix);
-
-        // Read final centroids from centroids.txt
-        Path finalCentroidPath = new Path(otherArgs[1] + "/centroids.txt");
-        FileSystem hdfs = FileSystem.get(conf);
-        List<Cluster> clusters = new ArrayList<>();
+            while (!converged && iteration < maxIterations) {
+                iteration++;
 
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(hdfs.open(finalCentroidPath)))) {
-            String line;
-            int clusterIndex = 0;
-            while ((line = br.readLine()) != null) {
-                String[] features = line.split(",");
-                clusters.add(new Cluster(new Record(features), clusterIndex++));
-            }
-        }
+                for (int i = 0; i < k; i++) {
+                    oldCentroids[i] = Record.copy(newCentroids[i]);
+                }
 
-        // Read the original dataset and assign each point to the nearest cluster
-        Path dataPath = new Path(inputPath);
-        List<String> labels = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(hdfs.open(dataPath)))) {
-            String line;
-            int recordIndex = 0;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",");
-                String[] featuresOnly = Arrays.copyOfRange(parts, 0, parts.length - 1);
-                Record record = new Record(featuresOnly, recordIndex);
-                labels.add(parts[parts.length - 1]); // Collect the actual label
-                Cluster nearest = null;
-                double minDistance = Double.MAX_VALUE;
-
-                for (Cluster cluster : clusters) {
-                    double distance = cluster.getCentroid().distance(record);
-                    if (distance < minDistance) {
-                        minDistance = distance;
-                        nearest = cluster;
+                // Job and centroid I/O time; the cached mode has no job and keeps centroids in memory
+                long[] millis = {0, -1};
+                AssignmentMetrics metrics = new AssignmentMetrics();
+                BitSet changed = null;
+                if (engine != null) {
+                    long passStart = System.currentTimeMillis();
+                    newCentroids = engine.iterate(oldCentroids, batchFraction, iteration, freezer.frozen());
+                    millis[0] = System.currentTimeMillis() - passStart;
+                    metrics = engine.metrics();
+                    changed = engine.changed();
+                } else {
+                    // Mini-batch centroids carry no cluster sizes, only the sampled share of the input is known
+                    long[] sizes = null;
+                    if (iteration > 1 && batchFraction == 0) {
+                        sizes = new long[k];
+                        for (int c = 0; c < k; c++) {
+                            sizes[c] = oldCentroids[c].numRecords();
+                        }
+                    }
+                    long expectedRows = inputRows;
+                    if (batchFraction > 0) {
+                        expectedRows = Math.round(expectedRows * batchFraction);
                     }
+                    ReduceLayout layout = ReduceLayout.plan(conf, k, sizes, expectedRows, maps, preAggregated);
+                    layout.configure(conf);
+                    if (!layout.toString().equals(lastLayout)) {
+                        lastLayout = layout.toString();
+                        System.out.println("Reduce layout: " + lastLayout);
+                    }
+                    newCentroids = runIteration(conf, inputPath, outputPath, oldCentroids, iteration, layout,
+                            metrics, millis);
                 }
-
-                if (nearest != null) {
-                    nearest.addPoint(record);
+                if (batchFraction > 0) {
+                    newCentroids = applyLearningRates(oldCentroids, newCentroids, seen);
                 }
 
-                recordIndex++;
+                // Map tasks keep no state between jobs, so reassignments are only known in cached mode
+                IterationStats stats = new IterationStats(iteration,
+                        freezer.update(oldCentroids, newCentroids, changed), freezer.frozenCount(), metrics,
+                        millis[0], millis[1]);
+                history.add(stats);
+                System.out.println(stats);
+                converged = stats.maxShift() <= stopThreshold;
+            }
+        } finally {
+            // Stops the engine threads, which would otherwise keep the JVM alive after a failure
+            if (engine != null) {
+                engine.close();
             }
         }
 
-        // Build and print contingency matrix
-        int[][] matrix = ContingencyMatrix.buildMatrix(clusters, labels);
+        writeFinalCentroids(conf, newCentroids, output);
+        writeIterationReport(conf, history, output);
+        long totalTime = System.currentTimeMillis() - start;
+
+        // Assign every point to its final cluster in a map-only job and count (cluster, label) pairs
+        ContingencyMatrix evaluation = KmeansAssignment.run(conf, inputPath, newCentroids,
+                output + "/assignments");
+        int[][] matrix = evaluation.toArray();
+        FileSystem hdfs = FileSystem.get(conf);
 
-        Path matrixPath = new Path(otherArgs[1] + "/contingency_matrix.txt");
+        Path matrixPath = new Path(output + "/contingency_matrix.txt");
         try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(hdfs.create(matrixPath, true)))) {
             for (int i = 0; i < matrix.length; i++) {
                 for (int j = 0; j < matrix[i].length; j++) {
@@ -240,7 +478,28 @@ public class KmeansDriver {
             }
         }
 
-        ContingencyMatrix.printMatrix(matrix);
+        return new Summary(iteration, totalTime, endIC - startIC, history, evaluation);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        conf.addResource(new Path("config.xml"));
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+
+        if (otherArgs.length != 2) {
+            System.err.println("Usage: <input> <output>");
+            System.exit(1);
+        }
+
+        Summary summary = run(conf, otherArgs[0], otherArgs[1]);
+
+        System.out.println("Execution time: " + summary.totalMillis + " ms");
+        System.out.println("Initial centroid selection time: " + summary.initMillis + " ms");
+        System.out.println("Total iterations: " + summary.iterations);
+        System.out.println("Distance kernel: " + DistanceKernel.get().name());
+
+        ContingencyMatrix.printMatrix(summary.evaluation.toArray());
+        summary.evaluation.printMetrics();
 
         System.exit(0);
     }
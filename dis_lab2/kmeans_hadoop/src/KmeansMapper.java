@@ -1,13 +1,13 @@
 package kmeans_hadoop.src;
 
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.Random;
 
 import javax.naming.Context;
 
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Mapper;
 
 import kmeans_hadoop.src.*;
@@ -16,49 +16,180 @@ import kmeans_hadoop.src.*;
  * Simply here I will get one point and list of centroids
  * All my task to assign this point to the nearest centroid
  * KEYIN: number of the line in the data file
- * VALUEIN: the exact feature of the record
+ * VALUEIN: the exact feature of the record (a CSV line, or a Record from the binary format)
  * KEYOUT: centroid ID [0, k[
  * VALUEOUT: the exact features of the record
+ * With in-mapper combining the points are summed per centroid instead, and
+ * cleanup() writes one partial sum per centroid (VALUEOUT carries the count).
+ * With blocked assignment the points are buffered into tiles that are assigned
+ * together by BlockedAssignment.
+ * Sums are compensated (CompensatedSum). With accumulation.centered every point is
+ * emitted or summed relative to its centroid (x - c), and the driver adds the
+ * centroid back to the mean the reducer writes.
  */
 
-public class KmeansMapper extends Mapper<LongWritable, Text, IntWritable, Record> {
+public class KmeansMapper extends Mapper<LongWritable, Writable, IntWritable, Record> {
 
-    private Record[] centroids;
-    private final Record Record = new Record();
+    private CentroidSet centroids;
+    private final Record buffer = new Record();
     private final IntWritable centroid = new IntWritable();
+    private double batchFraction;
+    private Random sampler;
+    private boolean combining;
+    // Points (not partial sums) go through the shuffle as floats with shuffle.precision=float
+    private boolean singlePrecision;
+    private double[][] sums;
+    private double[][] compensations;
+    private boolean centered;
+    private int[] counts;
+    private final AssignmentMetrics metrics = new AssignmentMetrics();
+    // SSE contribution of the point just assigned, filled in by the assignment itself
+    private final double[] cost = new double[1];
 
-    public void setup(Context context) {
-        int k = Integer.parseInt(context.getConfiguration().get("k"));
+    private static final int TILE_ROWS = 256;
+    private boolean blocked;
+    private double[] tile;
+    private int[] tileNearest;
+    private double[] tileCosts;
+    private int tileRows;
+    private int dim;
+    private double[] row;
+    private final Record output = new Record();
 
-        this.centroids = new Record[k];
-        for (int i = 0; i < k; i++) {
-            String centroidStr = context.getConfiguration().get("centroid." + i);
-            this.centroids[i] = new Record(centroidStr.split(","));
-        }
+    public void setup(Context context) throws IOException {
+        Record[] records = CentroidFile.load(context);
+        int k = records.length;
+        String assignment = context.getConfiguration().get("assignment", "standard");
+        boolean triangle = assignment.equals("triangle");
+        this.blocked = assignment.equals("blocked");
+        this.centroids = new CentroidSet(records, Distance.fromConfig(context.getConfiguration()), triangle);
+
+        // Mini-batch mode only keeps a random fraction of the input, drawn anew every iteration.
+        // The binary reader samples before reading (sample.fraction); text lines have to be read
+        // to be found, so for them the sampling here only saves the parsing and assignment.
+        boolean sampledByReader = context.getConfiguration().getDouble(KmeansBinaryInputFormat.SAMPLE_FRACTION, 0) > 0;
+        this.batchFraction = sampledByReader ? 0 : context.getConfiguration().getDouble("minibatch.fraction", 0);
+        int iteration = context.getConfiguration().getInt("iteration", 0);
+        this.sampler = new Random(iteration * 1_000_003L + context.getTaskAttemptID().getTaskID().getId());
+
+        this.combining = context.getConfiguration().getBoolean("inmapper.combining", true);
+        this.singlePrecision = context.getConfiguration().get("shuffle.precision", "double").equals("float");
+        this.centered = context.getConfiguration().getBoolean("accumulation.centered", false);
+        this.counts = new int[k];
+        metrics.emittedBytes = 0;
     }
 
-    public void map(LongWritable key, Text value, Context context)
+    public void map(LongWritable key, Writable value, Context context)
             throws IOException, InterruptedException {
 
-        String[] parts = value.toString().split(",");
-        String[] featuresOnly = Arrays.copyOfRange(parts, 0, parts.length - 1);
-        Record.set(featuresOnly);
+        if (batchFraction > 0 && sampler.nextDouble() >= batchFraction) {
+            return;
+        }
 
-        // Initialize variables
-        Double minDist = Double.POSITIVE_INFINITY;
-        Double distance = 0.0;
-        int nearest = -1;
+        Record record = Record.fromInput(value, buffer);
+        if (record == null) {
+            return;
+        }
+
+        if (blocked) {
+            addToTile(record.features(), context);
+            return;
+        }
 
         // Find the closest centroid
-        for (int i = 0; i < centroids.length; i++) {
-            distance = Record.distance(centroids[i]);
-            if (distance < minDist) {
-                nearest = i;
-                minDist = distance;
+        int nearest = centroids.nearest(record.features(), 0, metrics, cost, 0);
+        metrics.points++;
+        metrics.sse += cost[0];
+        if (!combining) {
+            centroid.set(nearest);
+            if (centered) {
+                record = center(nearest, record.features(), 0);
+            }
+            record.setSinglePrecision(singlePrecision);
+            emit(context, record);
+            return;
+        }
+        accumulate(nearest, record.features(), 0);
+    }
+
+    private void emit(Context context, Record value) throws IOException, InterruptedException {
+        context.write(centroid, value);
+        // IntWritable key
+        metrics.emittedBytes += 4 + value.serializedSize();
+    }
+
+    private void accumulate(int nearest, double[] features, int offset) {
+        if (sums == null) {
+            sums = new double[counts.length][centroids.get(0).length];
+            compensations = new double[counts.length][centroids.get(0).length];
+        }
+        CompensatedSum.add(sums[nearest], compensations[nearest], features, offset,
+                centered ? centroids.get(nearest) : null);
+        counts[nearest]++;
+    }
+
+    // The point relative to its centroid, in the reused output record
+    private Record center(int nearest, double[] features, int offset) {
+        double[] c = centroids.get(nearest);
+        if (row == null || row.length != c.length) {
+            row = new double[c.length];
+        }
+        for (int i = 0; i < c.length; i++) {
+            row[i] = features[offset + i] - c[i];
+        }
+        output.set(row);
+        return output;
+    }
+
+    private void addToTile(double[] features, Context context) throws IOException, InterruptedException {
+        if (tile == null || features.length != dim) {
+            flushTile(context);
+            dim = features.length;
+            tile = new double[TILE_ROWS * dim];
+            tileNearest = new int[TILE_ROWS];
+            tileCosts = new double[TILE_ROWS];
+            row = new double[dim];
+        }
+        System.arraycopy(features, 0, tile, tileRows * dim, dim);
+        if (++tileRows == TILE_ROWS) {
+            flushTile(context);
+        }
+    }
+
+    private void flushTile(Context context) throws IOException, InterruptedException {
+        if (tileRows == 0) {
+            return;
+        }
+        centroids.nearestBlock(tile, 0, tileRows, dim, tileNearest, tileCosts, 0, metrics);
+        metrics.points += tileRows;
+        for (int r = 0; r < tileRows; r++) {
+            metrics.sse += tileCosts[r];
+            if (combining) {
+                accumulate(tileNearest[r], tile, r * dim);
+            } else {
+                if (centered) {
+                    center(tileNearest[r], tile, r * dim);
+                } else {
+                    System.arraycopy(tile, r * dim, row, 0, dim);
+                    output.set(row);
+                }
+                output.setSinglePrecision(singlePrecision);
+                centroid.set(tileNearest[r]);
+                emit(context, output);
             }
         }
+        tileRows = 0;
+    }
 
-        centroid.set(nearest);
-        context.write(centroid, Record);
+    public void cleanup(Context context) throws IOException, InterruptedException {
+        flushTile(context);
+        for (int c = 0; c < counts.length; c++) {
+            if (counts[c] > 0) {
+                CompensatedSum.fold(sums[c], compensations[c]);
+                centroid.set(c);
+                emit(context, new Record(sums[c], counts[c]));
+            }
+        }
+        metrics.increment(context);
     }
 }
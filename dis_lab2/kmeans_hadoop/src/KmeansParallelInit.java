@@ -0,0 +1,387 @@
+package kmeans_hadoop.src;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.*;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.*;
+import org.apache.hadoop.mapreduce.lib.output.*;
+
+/*
+ * Scalable k-means++ (k-means||, Bahmani et al.) seeding.
+ * One point is drawn uniformly, then every round samples each point with probability
+ * oversampling * d^2(x, C) / cost(C) and adds the samples to the candidate set C.
+ * After the rounds every candidate is weighted by the number of points closest to it
+ * and the k centroids are picked locally by weighted k-means++ followed by a few
+ * weighted Lloyd iterations. Neither step needs to know the dataset size upfront.
+ */
+public class KmeansParallelInit {
+
+    private static final String CANDIDATES = "init.candidates";
+    private static final String COST = "init.cost";
+    private static final String OVERSAMPLING = "init.oversampling";
+    private static final String SEED = "init.seed";
+    private static final int LOCAL_ITERATIONS = 10;
+
+    // The passes over the data that k-means|| needs, run as jobs or over cached partitions
+    public interface Passes {
+        // One record drawn uniformly from the whole input
+        Record pickUniform(long seed) throws IOException, InterruptedException;
+
+        // Samples records into sampled and returns the cost of the input against candidates
+        double sample(List<Record> candidates, double oversampling, double cost, long seed, List<Record> sampled)
+                throws IOException, InterruptedException;
+
+        // Number of records whose nearest candidate is each candidate
+        long[] weigh(List<Record> candidates) throws IOException, InterruptedException;
+    }
+
+    // The candidates are reduced to k under the same distance the passes and the clustering use
+    public static Record[] select(Passes passes, int k, int rounds, double oversampling, long seed, Distance distance)
+            throws IOException, InterruptedException {
+        List<Record> candidates = new ArrayList<>();
+        candidates.add(passes.pickUniform(seed));
+
+        // The first pass only measures the cost of the initial candidate
+        double cost = passes.sample(candidates, oversampling, 0, seed, new ArrayList<>());
+
+        // Keep sampling past the requested rounds if there are still fewer than k candidates
+        for (int round = 1; (round <= rounds || candidates.size() < k) && round <= 4 * rounds && cost > 0; round++) {
+            List<Record> sampled = new ArrayList<>();
+            double newCost = passes.sample(candidates, oversampling, cost, seed + round, sampled);
+            candidates.addAll(sampled);
+            cost = newCost;
+        }
+
+        if (candidates.size() <= k) {
+            // Not enough distinct candidates to reduce, fill the rest by duplicating
+            Record[] centroids = new Record[k];
+            for (int i = 0; i < k; i++) {
+                centroids[i] = Record.copy(candidates.get(i % candidates.size()));
+            }
+            return centroids;
+        }
+
+        long[] weights = passes.weigh(candidates);
+        return reduce(candidates, weights, k, new Random(seed), distance);
+    }
+
+    // Weighted k-means++ over the candidates, refined by weighted Lloyd iterations
+    static Record[] reduce(List<Record> candidates, long[] weights, int k, Random random, Distance distance) {
+        int n = candidates.size();
+        double[][] points = new double[n][];
+        for (int i = 0; i < n; i++) {
+            points[i] = candidates.get(i).features();
+        }
+
+        double[][] centroids = new double[k][];
+        double[] minDist = new double[n];
+        Arrays.fill(minDist, Double.MAX_VALUE);
+
+        centroids[0] = points[pickWeighted(weights, null, random)].clone();
+        for (int c = 1; c < k; c++) {
+            for (int i = 0; i < n; i++) {
+                minDist[i] = Math.min(minDist[i], distance.cost(points[i], 0, centroids[c - 1]));
+            }
+            centroids[c] = points[pickWeighted(weights, minDist, random)].clone();
+        }
+
+        int dim = points[0].length;
+        for (int iteration = 0; iteration < LOCAL_ITERATIONS; iteration++) {
+            double[][] sums = new double[k][dim];
+            long[] counts = new long[k];
+            for (int i = 0; i < n; i++) {
+                int nearest = 0;
+                double best = Double.MAX_VALUE;
+                for (int c = 0; c < k; c++) {
+                    double reduced = distance.reduced(points[i], 0, centroids[c]);
+                    if (reduced < best) {
+                        best = reduced;
+                        nearest = c;
+                    }
+                }
+                for (int d = 0; d < dim; d++) {
+                    sums[nearest][d] += weights[i] * points[i][d];
+                }
+                counts[nearest] += weights[i];
+            }
+            for (int c = 0; c < k; c++) {
+                if (counts[c] > 0) {
+                    for (int d = 0; d < dim; d++) {
+                        centroids[c][d] = sums[c][d] / counts[c];
+                    }
+                }
+            }
+        }
+
+        Record[] result = new Record[k];
+        for (int c = 0; c < k; c++) {
+            result[c] = new Record(centroids[c]);
+        }
+        return result;
+    }
+
+    // Index drawn with probability weights[i] * scale[i] (or weights[i] when scale is null)
+    private static int pickWeighted(long[] weights, double[] scale, Random random) {
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += weights[i] * (scale == null ? 1 : scale[i]);
+        }
+        if (total <= 0) {
+            return random.nextInt(weights.length);
+        }
+        double target = random.nextDouble() * total;
+        double cumulative = 0;
+        int last = 0;
+        for (int i = 0; i < weights.length; i++) {
+            double mass = weights[i] * (scale == null ? 1 : scale[i]);
+            if (mass > 0) {
+                cumulative += mass;
+                last = i;
+                if (cumulative >= target) {
+                    return i;
+                }
+            }
+        }
+        return last;
+    }
+
+    private static CentroidSet readCandidates(Configuration conf) throws IOException {
+        List<Record> candidates = new ArrayList<>();
+        FileSystem fs = FileSystem.get(conf);
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(fs.open(new Path(conf.get(CANDIDATES)))))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                candidates.add(new Record(line.split(",")));
+            }
+        }
+        return new CentroidSet(candidates.toArray(new Record[0]), Distance.fromConfig(conf), false);
+    }
+
+    // Reservoir of one record per split, emitted with the number of records it was drawn from
+    public static class SeedMapper extends Mapper<LongWritable, Writable, NullWritable, Text> {
+        private final Record buffer = new Record();
+        private Random random;
+        private long seen;
+        private String chosen;
+
+        @Override
+        public void setup(Context context) {
+            random = new Random(context.getConfiguration().getLong(SEED, 11) + context.getTaskAttemptID().getTaskID().getId());
+        }
+
+        @Override
+        public void map(LongWritable key, Writable value, Context context) {
+            Record record = Record.fromInput(value, buffer);
+            if (record == null) {
+                return;
+            }
+            seen++;
+            if (random.nextDouble() * seen < 1) {
+                chosen = record.toString();
+            }
+        }
+
+        @Override
+        public void cleanup(Context context) throws IOException, InterruptedException {
+            if (chosen != null) {
+                context.write(NullWritable.get(), new Text("R\t" + seen + "\t" + chosen));
+            }
+        }
+    }
+
+    // Emits the sampled records and, once per split, the split's cost against the candidates
+    public static class SampleMapper extends Mapper<LongWritable, Writable, NullWritable, Text> {
+        private final Record buffer = new Record();
+        private CentroidSet candidates;
+        private Random random;
+        private double oversampling;
+        private double previousCost;
+        private double cost;
+        private final double[] rowCost = new double[1];
+
+        @Override
+        public void setup(Context context) throws IOException {
+            Configuration conf = context.getConfiguration();
+            candidates = readCandidates(conf);
+            random = new Random(conf.getLong(SEED, 11) * 31 + context.getTaskAttemptID().getTaskID().getId());
+            oversampling = conf.getDouble(OVERSAMPLING, 2);
+            previousCost = conf.getDouble(COST, 0);
+        }
+
+        @Override
+        public void map(LongWritable key, Writable value, Context context) throws IOException, InterruptedException {
+            Record record = Record.fromInput(value, buffer);
+            if (record == null) {
+                return;
+            }
+            candidates.nearest(record.features(), 0, null, rowCost, 0);
+            double contribution = rowCost[0];
+            cost += contribution;
+            if (previousCost > 0 && random.nextDouble() < oversampling * contribution / previousCost) {
+                context.write(NullWritable.get(), new Text("S\t" + record.toString()));
+            }
+        }
+
+        @Override
+        public void cleanup(Context context) throws IOException, InterruptedException {
+            context.write(NullWritable.get(), new Text("C\t" + cost));
+        }
+    }
+
+    // Counts the records closest to every candidate, emitted once per split
+    public static class WeightMapper extends Mapper<LongWritable, Writable, NullWritable, Text> {
+        private final Record buffer = new Record();
+        private CentroidSet candidates;
+        private long[] counts;
+
+        @Override
+        public void setup(Context context) throws IOException {
+            candidates = readCandidates(context.getConfiguration());
+            counts = new long[candidates.size()];
+        }
+
+        @Override
+        public void map(LongWritable key, Writable value, Context context) {
+            Record record = Record.fromInput(value, buffer);
+            if (record != null) {
+                counts[candidates.nearest(record.features(), 0)]++;
+            }
+        }
+
+        @Override
+        public void cleanup(Context context) throws IOException, InterruptedException {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    context.write(NullWritable.get(), new Text("W\t" + i + "\t" + counts[i]));
+                }
+            }
+        }
+    }
+
+    // Runs every pass as a map-only job over the text input
+    public static class JobPasses implements Passes {
+        private final Configuration conf;
+        private final String inputPath;
+        private final String workPath;
+        private int pass;
+
+        public JobPasses(Configuration conf, String inputPath, String workPath) {
+            this.conf = conf;
+            this.inputPath = inputPath;
+            this.workPath = workPath;
+        }
+
+        private List<String[]> runPass(Class<? extends Mapper<?, ?, ?, ?>> mapper, Configuration passConf)
+                throws IOException, InterruptedException {
+            pass++;
+            Path output = new Path(workPath + "/pass_" + pass);
+            Job job = Job.getInstance(passConf, "Init_" + pass);
+            job.setJarByClass(KmeansParallelInit.class);
+            job.setMapperClass(mapper);
+            job.setNumReduceTasks(0);
+            job.setInputFormatClass(KmeansBinaryInputFormat.formatClass(conf, inputPath));
+            job.setOutputFormatClass(TextOutputFormat.class);
+            job.setOutputKeyClass(NullWritable.class);
+            job.setOutputValueClass(Text.class);
+            FileInputFormat.addInputPath(job, new Path(inputPath));
+            FileOutputFormat.setOutputPath(job, output);
+
+            try {
+                if (!job.waitForCompletion(true)) {
+                    throw new IOException("Initialization pass " + pass + " failed.");
+                }
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+
+            List<String[]> lines = new ArrayList<>();
+            FileSystem fs = FileSystem.get(conf);
+            for (FileStatus file : fs.listStatus(output)) {
+                if (file.getPath().getName().startsWith("part-")) {
+                    try (BufferedReader br = new BufferedReader(new InputStreamReader(fs.open(file.getPath())))) {
+                        String line;
+                        while ((line = br.readLine()) != null) {
+                            lines.add(line.split("\t"));
+                        }
+                    }
+                }
+            }
+            fs.delete(output, true);
+            return lines;
+        }
+
+        private Configuration withCandidates(List<Record> candidates) throws IOException {
+            Path path = new Path(workPath + "/candidates.txt");
+            FileSystem fs = FileSystem.get(conf);
+            try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(fs.create(path, true)))) {
+                for (Record candidate : candidates) {
+                    bw.write(candidate.toString());
+                    bw.newLine();
+                }
+            }
+            Configuration passConf = new Configuration(conf);
+            passConf.set(CANDIDATES, path.toString());
+            return passConf;
+        }
+
+        @Override
+        public Record pickUniform(long seed) throws IOException, InterruptedException {
+            Configuration passConf = new Configuration(conf);
+            passConf.setLong(SEED, seed);
+            List<String[]> reservoirs = runPass(SeedMapper.class, passConf);
+
+            // Pick one split's reservoir with probability proportional to its record count
+            long total = 0;
+            for (String[] reservoir : reservoirs) {
+                total += Long.parseLong(reservoir[1]);
+            }
+            if (total == 0) {
+                throw new IOException("No records found in " + inputPath);
+            }
+            long target = (long) (new Random(seed).nextDouble() * total);
+            for (String[] reservoir : reservoirs) {
+                target -= Long.parseLong(reservoir[1]);
+                if (target < 0) {
+                    return new Record(reservoir[2].split(","));
+                }
+            }
+            return new Record(reservoirs.get(reservoirs.size() - 1)[2].split(","));
+        }
+
+        @Override
+        public double sample(List<Record> candidates, double oversampling, double cost, long seed,
+                List<Record> sampled) throws IOException, InterruptedException {
+            Configuration passConf = withCandidates(candidates);
+            passConf.setDouble(OVERSAMPLING, oversampling);
+            passConf.setDouble(COST, cost);
+            passConf.setLong(SEED, seed);
+
+            double newCost = 0;
+            for (String[] line : runPass(SampleMapper.class, passConf)) {
+                if (line[0].equals("C")) {
+                    newCost += Double.parseDouble(line[1]);
+                } else {
+                    sampled.add(new Record(line[1].split(",")));
+                }
+            }
+            return newCost;
+        }
+
+        @Override
+        public long[] weigh(List<Record> candidates) throws IOException, InterruptedException {
+            long[] weights = new long[candidates.size()];
+            for (String[] line : runPass(WeightMapper.class, withCandidates(candidates))) {
+                weights[Integer.parseInt(line[1])] += Long.parseLong(line[2]);
+            }
+            return weights;
+        }
+    }
+}
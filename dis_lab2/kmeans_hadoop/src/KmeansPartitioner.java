@@ -0,0 +1,51 @@
+package kmeans_hadoop.src;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+/*
+ * Sends every cluster to the reducer(s) of the job's ReduceLayout. The values of a
+ * split cluster are dealt round-robin over its reducers, starting at an offset given
+ * by the map task, so that tasks emitting a single partial sum per cluster do not
+ * all pick the first one. Without a layout it falls back to cluster id modulo the
+ * number of reducers.
+ */
+public class KmeansPartitioner extends Partitioner<IntWritable, Record> implements Configurable {
+
+    private Configuration conf;
+    private ReduceLayout layout;
+    private int[] next;
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+        this.layout = ReduceLayout.fromConf(conf);
+        if (layout != null) {
+            this.next = new int[layout.clusters()];
+            Arrays.fill(next, conf.getInt(MRJobConfig.TASK_PARTITION, 0));
+        }
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    @Override
+    public int getPartition(IntWritable cluster, Record value, int numPartitions) {
+        int c = cluster.get();
+        if (layout == null) {
+            return c % numPartitions;
+        }
+        int[] reducers = layout.reducersOf(c);
+        if (reducers.length == 1) {
+            return reducers[0];
+        }
+        return reducers[Math.floorMod(next[c]++, reducers.length)];
+    }
+}
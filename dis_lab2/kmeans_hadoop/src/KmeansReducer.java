@@ -7,15 +7,12 @@ import java.util.Iterator;
 import javax.naming.Context;
 
 import org.apache.hadoop.io.IntWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer;
 
 import kmeans_hadoop.src.*;
 
-public class KmeansReducer extends Reducer<IntWritable, Record, Text, Text> {
-
-    private final Text centroidId = new Text();
-    private final Text centroidValue = new Text();
+// Writes every centroid as its mean with the number of points it averages (numRecords)
+public class KmeansReducer extends Reducer<IntWritable, Record, IntWritable, Record> {
 
     public void reduce(IntWritable centroid, Iterable<Record> partialSums, Context context)
             throws IOException, InterruptedException {
@@ -31,11 +28,12 @@ public class KmeansReducer extends Reducer<IntWritable, Record, Text, Text> {
             sum.sum(it.next());
         }
 
-        // Calculate the new centroid
+        // Calculate the new centroid, keeping the number of points it averages
+        int count = sum.numRecords();
         sum.average();
+        Record mean = new Record(sum.features(), count);
 
-        centroidId.set(centroid.toString());
-        centroidValue.set(sum.toString());
-        context.write(centroidId, centroidValue);
+        context.write(centroid, mean);
+        context.getCounter(KmeansCounters.REDUCER_EMITTED_BYTES).increment(4 + mean.serializedSize());
     }
 }
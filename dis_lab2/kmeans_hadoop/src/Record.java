@@ -3,24 +3,43 @@ package kmeans_hadoop.src;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
-
+import org.apache.hadoop.io.WritableUtils;
+
+/*
+ * Serialized form, self-delimiting so a raw reader can skip it from the first bytes:
+ *   vint header: dim << 1, plus 1 when the features are stored as floats
+ *   vint numRecords
+ *   dim features, 8-byte doubles or 4-byte floats
+ * Single precision is opt-in per record (shuffle.precision=float for the mapped points);
+ * everything else, partial sums and centroids included, keeps the exact doubles.
+ * sum() is compensated (see CompensatedSum); the rounding error it sets aside is
+ * added back before the features are read or written.
+ */
 public class Record implements Writable {
 
-    private Double[] features = null;
+    private double[] features = null;
     private int dim;
     private int numRecords;
     private int index;
+    private boolean singlePrecision;
+    // Rounding error of the sums not yet added to the features, null when there is none
+    private double[] compensation;
 
     public Record() {
         this.dim = 0;
     }
 
-    public Record(final Double[] c) {
+    public Record(final double[] c) {
         this.set(c);
     }
 
+    public Record(final double[] sum, int numRecords) {
+        this.set(sum);
+        this.numRecords = numRecords;
+    }
+
     public Record(final String[] s) {
         this.set(s);
     }
@@ -30,19 +49,37 @@ public class Record implements Writable {
     }
 
     public static Record copy(final Record record) {
-        Record ret = new Record(record.features);
+        Record ret = new Record(record.features().clone());
         ret.numRecords = record.numRecords;
+        ret.singlePrecision = record.singlePrecision;
         return ret;
     }
 
-    public void set(final Double[] c) {
+    // Features of a map input value: a Record from the binary format as is,
+    // or a CSV line whose last column is the label, parsed into buffer.
+    // Returns null for lines without any feature column.
+    public static Record fromInput(final Writable value, final Record buffer) {
+        if (value instanceof Record record) {
+            return record;
+        }
+        Text line = (Text) value;
+        return buffer.set(line.getBytes(), line.getLength()) ? buffer : null;
+    }
+
+    public void set(final double[] c) {
         this.features = c;
+        this.compensation = null;
         this.dim = c.length;
         this.numRecords = 1;
     }
 
+    public void set(final double[] c, int index) {
+        this.set(c);
+        this.index = index;
+    }
+
     public void set(final String[] s) {
-        this.features = new Double[s.length];
+        ensureCapacity(s.length);
         this.dim = s.length;
         this.numRecords = 1;
         for (int i = 0; i < s.length; i++) {
@@ -51,7 +88,7 @@ public class Record implements Writable {
     }
 
     public void set(final String[] s, int index) {
-        this.features = new Double[s.length];
+        ensureCapacity(s.length);
         this.dim = s.length;
         this.numRecords = 1;
         this.index = index;
@@ -60,29 +97,78 @@ public class Record implements Writable {
         }
     }
 
+    // Parses the features of a CSV line from its bytes, reusing the feature buffer
+    public boolean set(final byte[] line, int length) {
+        int dim = CsvParser.countFeatures(line, length);
+        if (dim == 0) {
+            return false;
+        }
+        ensureCapacity(dim);
+        this.dim = dim;
+        this.numRecords = 1;
+        CsvParser.parseFeatures(line, length, this.features);
+        return true;
+    }
+
+    // Reuse the feature buffer when the dimension does not change, so that
+    // Hadoop's object reuse in map/combine/reduce does not allocate per record
+    private void ensureCapacity(int dim) {
+        this.compensation = null;
+        if (this.features == null || this.features.length != dim) {
+            this.features = new double[dim];
+        }
+    }
+
+    // Stores the features as floats when written, halving their size at the cost of precision
+    public void setSinglePrecision(boolean singlePrecision) {
+        this.singlePrecision = singlePrecision;
+    }
+
     @Override
     public void readFields(final DataInput in) throws IOException {
-        this.dim = in.readInt();
-        this.numRecords = in.readInt();
-        this.features = new Double[this.dim];
-
-        for (int i = 0; i < this.dim; i++) {
-            this.features[i] = in.readDouble();
+        int header = WritableUtils.readVInt(in);
+        this.dim = header >>> 1;
+        this.singlePrecision = (header & 1) != 0;
+        this.numRecords = WritableUtils.readVInt(in);
+        ensureCapacity(this.dim);
+
+        if (this.singlePrecision) {
+            for (int i = 0; i < this.dim; i++) {
+                this.features[i] = in.readFloat();
+            }
+        } else {
+            for (int i = 0; i < this.dim; i++) {
+                this.features[i] = in.readDouble();
+            }
         }
     }
 
     @Override
     public void write(final DataOutput out) throws IOException {
-        out.writeInt(this.dim);
-        out.writeInt(this.numRecords);
+        fold();
+        WritableUtils.writeVInt(out, this.dim << 1 | (this.singlePrecision ? 1 : 0));
+        WritableUtils.writeVInt(out, this.numRecords);
 
-        for (int i = 0; i < this.dim; i++) {
-            out.writeDouble(this.features[i]);
+        if (this.singlePrecision) {
+            for (int i = 0; i < this.dim; i++) {
+                out.writeFloat((float) this.features[i]);
+            }
+        } else {
+            for (int i = 0; i < this.dim; i++) {
+                out.writeDouble(this.features[i]);
+            }
         }
     }
 
+    // Bytes written by write()
+    public int serializedSize() {
+        return WritableUtils.getVIntSize(this.dim << 1) + WritableUtils.getVIntSize(this.numRecords)
+                + this.dim * (this.singlePrecision ? 4 : 8);
+    }
+
     @Override
     public String toString() {
+        fold();
         StringBuilder Record = new StringBuilder();
         for (int i = 0; i < this.dim; i++) {
             Record.append(Double.toString(this.features[i]));
@@ -95,21 +181,33 @@ public class Record implements Writable {
 
     // to sum 2 records
     public void sum(Record record) {
-        for (int i = 0; i < this.dim; i++) {
-            this.features[i] += record.features[i];
+        if (this.compensation == null) {
+            this.compensation = new double[this.dim];
         }
+        CompensatedSum.add(this.features, this.compensation, record.features(), 0, null);
         this.numRecords += record.numRecords;
     }
 
-    public Double distance(Record record) {
-        Double dist = 0.0;
+    private void fold() {
+        if (this.compensation != null) {
+            CompensatedSum.fold(this.features, this.compensation);
+            this.compensation = null;
+        }
+    }
+
+    public double distance(Record record) {
+        fold();
+        record.fold();
+        double dist = 0.0;
         for (int i = 0; i < this.dim; i++) {
-            dist += Math.pow(this.features[i] - record.features[i], 2);
+            double diff = this.features[i] - record.features[i];
+            dist += diff * diff;
         }
         return Math.sqrt(dist);
     }
 
     public void average() {
+        fold();
         for (int i = 0; i < this.dim; i++) {
             this.features[i] = this.features[i] / this.numRecords;
         }
@@ -119,4 +217,13 @@ public class Record implements Writable {
     public int index() {
         return this.index;
     }
+
+    public double[] features() {
+        fold();
+        return this.features;
+    }
+
+    public int numRecords() {
+        return this.numRecords;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,153 @@
+package kmeans_hadoop.src;
+
+import java.util.*;
+
+import org.apache.hadoop.conf.Configuration;
+
+/*
+ * Which reducers sum which clusters. The expected load of a cluster is the number of
+ * values its reducer will read: its size from the previous iteration, or, when the
+ * maps pre-aggregate (in-mapper combining or the combiner), at most one partial sum
+ * per map task. The number of reducers is the total load over reduce.target.load
+ * (or reduce.tasks when set), at most k. Clusters are then packed largest first onto
+ * the least loaded reducer; a cluster heavier than a whole reducer's share is split
+ * into pieces on several reducers, and the driver merges their means by count.
+ * The layout travels to the partitioner as reduce.layout: one entry per cluster,
+ * the reducers of a cluster separated by ':'.
+ */
+public class ReduceLayout {
+    public static final String CONF_KEY = "reduce.layout";
+
+    private final int reducers;
+    private final int[][] clusterReducers;
+
+    private ReduceLayout(int reducers, int[][] clusterReducers) {
+        this.reducers = reducers;
+        this.clusterReducers = clusterReducers;
+    }
+
+    public int reducers() {
+        return reducers;
+    }
+
+    public int clusters() {
+        return clusterReducers.length;
+    }
+
+    public int[] reducersOf(int cluster) {
+        return clusterReducers[cluster];
+    }
+
+    /*
+     * Layout for the next iteration. sizes holds the cluster sizes of the previous one,
+     * or null before the first, when every cluster is assumed to get an equal share of
+     * expectedRows (estimated by the driver from the input, 0 if unknown).
+     */
+    public static ReduceLayout plan(Configuration conf, int k, long[] sizes, long expectedRows, int maps,
+            boolean preAggregated) {
+        long[] loads = new long[k];
+        for (int c = 0; c < k; c++) {
+            long size = sizes != null ? sizes[c] : expectedRows / k;
+            loads[c] = Math.max(1, preAggregated ? Math.min(size, maps) : size);
+        }
+
+        int fixed = conf.getInt("reduce.tasks", 0);
+        int reducers;
+        if (fixed > 0) {
+            reducers = fixed;
+        } else {
+            long total = 0;
+            for (long load : loads) {
+                total += load;
+            }
+            long target = Math.max(1, conf.getLong("reduce.target.load", 1_000_000));
+            reducers = (int) Math.min(k, (total + target - 1) / target);
+        }
+        return pack(loads, Math.max(1, Math.min(reducers, k)));
+    }
+
+    // Longest-processing-time-first packing of the cluster loads onto the given number of reducers
+    static ReduceLayout pack(long[] loads, int reducers) {
+        long total = 0;
+        for (long load : loads) {
+            total += load;
+        }
+        long share = (total + reducers - 1) / reducers;
+
+        // Pieces of clusters, heaviest first: {cluster, load}
+        List<long[]> pieces = new ArrayList<>();
+        for (int c = 0; c < loads.length; c++) {
+            int parts = (int) Math.min(reducers, Math.max(1, (loads[c] + share - 1) / share));
+            for (int p = 0; p < parts; p++) {
+                pieces.add(new long[] {c, loads[c] / parts + (p < loads[c] % parts ? 1 : 0)});
+            }
+        }
+        pieces.sort((a, b) -> Long.compare(b[1], a[1]));
+
+        PriorityQueue<long[]> queue = new PriorityQueue<>(
+                (a, b) -> a[1] != b[1] ? Long.compare(a[1], b[1]) : Long.compare(a[0], b[0]));
+        for (int r = 0; r < reducers; r++) {
+            queue.add(new long[] {r, 0});
+        }
+        List<Set<Integer>> assigned = new ArrayList<>();
+        for (int c = 0; c < loads.length; c++) {
+            assigned.add(new TreeSet<>());
+        }
+        for (long[] piece : pieces) {
+            long[] reducer = queue.poll();
+            assigned.get((int) piece[0]).add((int) reducer[0]);
+            reducer[1] += piece[1];
+            queue.add(reducer);
+        }
+
+        int[][] clusterReducers = new int[loads.length][];
+        for (int c = 0; c < loads.length; c++) {
+            clusterReducers[c] = assigned.get(c).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return new ReduceLayout(reducers, clusterReducers);
+    }
+
+    public void configure(Configuration conf) {
+        StringJoiner entries = new StringJoiner(",");
+        for (int[] cluster : clusterReducers) {
+            StringJoiner entry = new StringJoiner(":");
+            for (int reducer : cluster) {
+                entry.add(Integer.toString(reducer));
+            }
+            entries.add(entry.toString());
+        }
+        conf.set(CONF_KEY, entries.toString());
+    }
+
+    // Layout of the job, null when the driver did not set one
+    public static ReduceLayout fromConf(Configuration conf) {
+        String value = conf.get(CONF_KEY);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        String[] entries = value.split(",");
+        int[][] clusterReducers = new int[entries.length][];
+        int reducers = 0;
+        for (int c = 0; c < entries.length; c++) {
+            String[] ids = entries[c].split(":");
+            clusterReducers[c] = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                clusterReducers[c][i] = Integer.parseInt(ids[i]);
+                reducers = Math.max(reducers, clusterReducers[c][i] + 1);
+            }
+        }
+        return new ReduceLayout(reducers, clusterReducers);
+    }
+
+    @Override
+    public String toString() {
+        int split = 0;
+        for (int[] cluster : clusterReducers) {
+            if (cluster.length > 1) {
+                split++;
+            }
+        }
+        return reducers + " reducer(s) for " + clusterReducers.length + " clusters"
+                + (split > 0 ? ", " + split + " split" : "");
+    }
+}
@@ -0,0 +1,212 @@
+package kmeans_hadoop.src;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * SIMD version of DistanceKernel on the widest double species of the CPU.
+ * nearestSquaredEuclidean and accumulateDots work on four centroids at a time,
+ * so every slice of the point is loaded once for four independent accumulators.
+ * Lanes are summed in a different order than the scalar loop, so distances can
+ * differ from it in the last bits.
+ */
+class VectorDistanceKernel extends DistanceKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    @Override
+    public String name() {
+        return "vector (" + SPECIES.vectorBitSize() + " bit)";
+    }
+
+    @Override
+    public double squaredEuclidean(double[] a, int aOffset, double[] b, int bOffset, int dim) {
+        int bound = SPECIES.loopBound(dim);
+        double dist = 0.0;
+        int i = 0;
+        if (bound > 0) {
+            DoubleVector acc = DoubleVector.zero(SPECIES);
+            for (; i < bound; i += LANES) {
+                DoubleVector diff = DoubleVector.fromArray(SPECIES, a, aOffset + i)
+                        .sub(DoubleVector.fromArray(SPECIES, b, bOffset + i));
+                acc = diff.fma(diff, acc);
+            }
+            dist = acc.reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < dim; i++) {
+            double diff = a[aOffset + i] - b[bOffset + i];
+            dist += diff * diff;
+        }
+        return dist;
+    }
+
+    @Override
+    public int nearestSquaredEuclidean(double[] point, int offset, double[] centroids, int k, int dim,
+            double[] minDist, int minIndex) {
+        int bound = SPECIES.loopBound(dim);
+        if (bound == 0) {
+            return super.nearestSquaredEuclidean(point, offset, centroids, k, dim, minDist, minIndex);
+        }
+
+        int nearest = 0;
+        double best = Double.MAX_VALUE;
+        int c = 0;
+        for (; c + 4 <= k; c += 4) {
+            int b0 = c * dim;
+            int b1 = b0 + dim;
+            int b2 = b1 + dim;
+            int b3 = b2 + dim;
+            DoubleVector acc0 = DoubleVector.zero(SPECIES);
+            DoubleVector acc1 = DoubleVector.zero(SPECIES);
+            DoubleVector acc2 = DoubleVector.zero(SPECIES);
+            DoubleVector acc3 = DoubleVector.zero(SPECIES);
+            int i = 0;
+            for (; i < bound; i += LANES) {
+                DoubleVector p = DoubleVector.fromArray(SPECIES, point, offset + i);
+                DoubleVector d0 = p.sub(DoubleVector.fromArray(SPECIES, centroids, b0 + i));
+                DoubleVector d1 = p.sub(DoubleVector.fromArray(SPECIES, centroids, b1 + i));
+                DoubleVector d2 = p.sub(DoubleVector.fromArray(SPECIES, centroids, b2 + i));
+                DoubleVector d3 = p.sub(DoubleVector.fromArray(SPECIES, centroids, b3 + i));
+                acc0 = d0.fma(d0, acc0);
+                acc1 = d1.fma(d1, acc1);
+                acc2 = d2.fma(d2, acc2);
+                acc3 = d3.fma(d3, acc3);
+            }
+            double dist0 = acc0.reduceLanes(VectorOperators.ADD);
+            double dist1 = acc1.reduceLanes(VectorOperators.ADD);
+            double dist2 = acc2.reduceLanes(VectorOperators.ADD);
+            double dist3 = acc3.reduceLanes(VectorOperators.ADD);
+            for (; i < dim; i++) {
+                double p = point[offset + i];
+                double diff0 = p - centroids[b0 + i];
+                double diff1 = p - centroids[b1 + i];
+                double diff2 = p - centroids[b2 + i];
+                double diff3 = p - centroids[b3 + i];
+                dist0 += diff0 * diff0;
+                dist1 += diff1 * diff1;
+                dist2 += diff2 * diff2;
+                dist3 += diff3 * diff3;
+            }
+            if (dist0 < best) {
+                best = dist0;
+                nearest = c;
+            }
+            if (dist1 < best) {
+                best = dist1;
+                nearest = c + 1;
+            }
+            if (dist2 < best) {
+                best = dist2;
+                nearest = c + 2;
+            }
+            if (dist3 < best) {
+                best = dist3;
+                nearest = c + 3;
+            }
+        }
+        for (; c < k; c++) {
+            double dist = squaredEuclidean(point, offset, centroids, c * dim, dim);
+            if (dist < best) {
+                best = dist;
+                nearest = c;
+            }
+        }
+        if (minDist != null) {
+            minDist[minIndex] = best;
+        }
+        return nearest;
+    }
+
+    /*
+     * Register tile of two points by four centroids: each step loads six vectors
+     * for eight fused multiply-adds. Leftover points and centroids go through the
+     * scalar loops, which only happens at the edges of a tile.
+     */
+    @Override
+    public void accumulateDots(double[] points, int from, int to, double[] centroids, int c0, int c1,
+            int d0, int d1, int dim, double[] out, int stride) {
+        int length = d1 - d0;
+        int bound = SPECIES.loopBound(length);
+        if (bound == 0) {
+            scalarDots(points, from, to, centroids, c0, c1, d0, d1, dim, out, stride, 0);
+            return;
+        }
+
+        int p = from;
+        for (; p + 2 <= to; p += 2) {
+            int a0 = p * dim + d0;
+            int a1 = a0 + dim;
+            int row0 = (p - from) * stride - c0;
+            int row1 = row0 + stride;
+            int c = c0;
+            for (; c + 4 <= c1; c += 4) {
+                int b0 = c * dim + d0;
+                int b1 = b0 + dim;
+                int b2 = b1 + dim;
+                int b3 = b2 + dim;
+                DoubleVector acc00 = DoubleVector.zero(SPECIES);
+                DoubleVector acc01 = DoubleVector.zero(SPECIES);
+                DoubleVector acc02 = DoubleVector.zero(SPECIES);
+                DoubleVector acc03 = DoubleVector.zero(SPECIES);
+                DoubleVector acc10 = DoubleVector.zero(SPECIES);
+                DoubleVector acc11 = DoubleVector.zero(SPECIES);
+                DoubleVector acc12 = DoubleVector.zero(SPECIES);
+                DoubleVector acc13 = DoubleVector.zero(SPECIES);
+                int i = 0;
+                for (; i < bound; i += LANES) {
+                    DoubleVector x0 = DoubleVector.fromArray(SPECIES, points, a0 + i);
+                    DoubleVector x1 = DoubleVector.fromArray(SPECIES, points, a1 + i);
+                    DoubleVector y0 = DoubleVector.fromArray(SPECIES, centroids, b0 + i);
+                    DoubleVector y1 = DoubleVector.fromArray(SPECIES, centroids, b1 + i);
+                    DoubleVector y2 = DoubleVector.fromArray(SPECIES, centroids, b2 + i);
+                    DoubleVector y3 = DoubleVector.fromArray(SPECIES, centroids, b3 + i);
+                    acc00 = x0.fma(y0, acc00);
+                    acc01 = x0.fma(y1, acc01);
+                    acc02 = x0.fma(y2, acc02);
+                    acc03 = x0.fma(y3, acc03);
+                    acc10 = x1.fma(y0, acc10);
+                    acc11 = x1.fma(y1, acc11);
+                    acc12 = x1.fma(y2, acc12);
+                    acc13 = x1.fma(y3, acc13);
+                }
+                double dot00 = acc00.reduceLanes(VectorOperators.ADD);
+                double dot01 = acc01.reduceLanes(VectorOperators.ADD);
+                double dot02 = acc02.reduceLanes(VectorOperators.ADD);
+                double dot03 = acc03.reduceLanes(VectorOperators.ADD);
+                double dot10 = acc10.reduceLanes(VectorOperators.ADD);
+                double dot11 = acc11.reduceLanes(VectorOperators.ADD);
+                double dot12 = acc12.reduceLanes(VectorOperators.ADD);
+                double dot13 = acc13.reduceLanes(VectorOperators.ADD);
+                for (; i < length; i++) {
+                    double x0 = points[a0 + i];
+                    double x1 = points[a1 + i];
+                    dot00 += x0 * centroids[b0 + i];
+                    dot01 += x0 * centroids[b1 + i];
+                    dot02 += x0 * centroids[b2 + i];
+                    dot03 += x0 * centroids[b3 + i];
+                    dot10 += x1 * centroids[b0 + i];
+                    dot11 += x1 * centroids[b1 + i];
+                    dot12 += x1 * centroids[b2 + i];
+                    dot13 += x1 * centroids[b3 + i];
+                }
+                out[row0 + c] += dot00;
+                out[row0 + c + 1] += dot01;
+                out[row0 + c + 2] += dot02;
+                out[row0 + c + 3] += dot03;
+                out[row1 + c] += dot10;
+                out[row1 + c + 1] += dot11;
+                out[row1 + c + 2] += dot12;
+                out[row1 + c + 3] += dot13;
+            }
+            if (c < c1) {
+                scalarDots(points, p, p + 2, centroids, c, c1, d0, d1, dim, out, stride,
+                        (p - from) * stride + c - c0);
+            }
+        }
+        if (p < to) {
+            scalarDots(points, p, to, centroids, c0, c1, d0, d1, dim, out, stride, (p - from) * stride);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package parallel_kmeans;
+
+import java.io.IOException;
+import java.util.*;
+import utils.*;
+import utils.Record;
+
+public class Main {
+    public static void main(String[] args) {
+        String filePath = args.length > 0 ? args[0] : "src/input/iris.data";
+        // Same values as the "distance" property of the Hadoop config.xml
+        Distance distance = Distance.parse(args.length > 1 ? args[1] : "2");
+
+        List<Record> records = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        // Optional centroids of a previous run (text or binary) to warm-start from
+        List<Record> initialCentroids = null;
+
+        try {
+            DataLoader.load(filePath, records, labels);
+            if (args.length > 2) {
+                initialCentroids = CentroidFile.read(args[2]);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        long startTime = System.nanoTime();
+        List<Cluster> clusters;
+        try (ParallelKMeans kMeans = new ParallelKMeans(records, 3, 100)) {
+            kMeans.setDistance(distance);
+            if (initialCentroids != null) {
+                kMeans.setInitialCentroids(initialCentroids);
+            }
+            kMeans.run();
+            clusters = kMeans.getClusters();
+        }
+        long endTime = System.nanoTime();
+
+        // Print final centroids
+        System.out.println("Final centroids coordinates: ");
+        for (Cluster cluster : clusters) {
+            System.out.println(Arrays.toString(cluster.getCentroid().features()));
+        }
+
+        double elapsedTime = (endTime - startTime) / 1e6; // Convert to milliseconds
+        System.out.println("K-Means execution time: " + elapsedTime + " ms");
+        System.out.println("Distance kernel: " + DistanceKernel.get().name());
+
+        ContingencyMatrix evaluation = ContingencyMatrix.of(clusters, labels);
+        ContingencyMatrix.printMatrix(evaluation.toArray());
+        evaluation.printMetrics();
+    }
+}
@@ -0,0 +1,261 @@
+package parallel_kmeans;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import utils.*;
+import utils.Record;
+
+/*
+ * Multi-threaded in-memory K-Means with the same contract as unparallelled_kmeans.KMeans.
+ * Every iteration the records are split into contiguous ranges, each worker assigns its
+ * range and accumulates per-cluster sums and counts locally (like KmeansCombiner does for
+ * a Hadoop split), and the partial sums are merged once before computing the new centroids.
+ * Sums and merges are compensated (CompensatedSum), optionally centered on the current centroids.
+ * The worker pool lives as long as the instance, so run() can be called again; close() stops it.
+ */
+public class ParallelKMeans implements AutoCloseable {
+    private final Random random = new Random(11);
+
+    private final int k;
+    private final List<Record> records;
+    private final int maxIterations;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final int[] assignments;
+    private List<Cluster> clusters;
+    private InitMode initMode = InitMode.KMEANS_PLUS_PLUS;
+    private Distance distance = new Distance.Euclidean();
+    // Centroids of a previous run to start from instead of seeding
+    private List<Record> initialCentroids;
+    private boolean centeredAccumulation;
+
+    public ParallelKMeans(List<Record> records, int k, int maxIterations) {
+        this(records, k, maxIterations, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelKMeans(List<Record> records, int k, int maxIterations, int numThreads) {
+        this.records = records;
+        this.k = k;
+        this.maxIterations = maxIterations;
+        this.clusters = new ArrayList<>();
+        this.pool = new ForkJoinPool(numThreads);
+        this.assignments = new int[records.size()];
+        // A few chunks per worker keeps the pool balanced without making merges dominate
+        this.chunkSize = Math.max(1024, records.size() / (numThreads * 4));
+    }
+
+    public void setInitMode(InitMode initMode) {
+        this.initMode = initMode;
+    }
+
+    public void setDistance(Distance distance) {
+        this.distance = distance;
+    }
+
+    public void setCenteredAccumulation(boolean centeredAccumulation) {
+        this.centeredAccumulation = centeredAccumulation;
+    }
+
+    public void setInitialCentroids(List<Record> initialCentroids) {
+        CentroidFile.validate(initialCentroids, k, records.get(0).features().length);
+        this.initialCentroids = initialCentroids;
+    }
+
+    // Per-cluster sums and counts produced by one worker
+    private static class PartialSums {
+        final double[][] sums;
+        final double[][] compensations;
+        final long[] counts;
+
+        PartialSums(int k, int dim) {
+            this.sums = new double[k][dim];
+            this.compensations = new double[k][dim];
+            this.counts = new long[k];
+        }
+
+        void merge(PartialSums other) {
+            for (int c = 0; c < sums.length; c++) {
+                other.fold(c);
+                CompensatedSum.add(sums[c], compensations[c], other.sums[c], 0, null);
+                counts[c] += other.counts[c];
+            }
+        }
+
+        double[] fold(int c) {
+            CompensatedSum.fold(sums[c], compensations[c]);
+            return sums[c];
+        }
+    }
+
+    // What every task of one assignment pass reads, and the assignments it fills
+    private static class Pass {
+        final List<Record> records;
+        final int[] assignments;
+        final double[][] centroids;
+        // Row-major centroids for the batched kernel, null unless the distance is Euclidean
+        final double[] packed;
+        final Distance distance;
+        final boolean centered;
+        final int chunkSize;
+
+        Pass(List<Record> records, int[] assignments, double[][] centroids, double[] packed, Distance distance,
+                boolean centered, int chunkSize) {
+            this.records = records;
+            this.assignments = assignments;
+            this.centroids = centroids;
+            this.packed = packed;
+            this.distance = distance;
+            this.centered = centered;
+            this.chunkSize = chunkSize;
+        }
+    }
+
+    private static class AssignTask extends RecursiveTask<PartialSums> {
+        private static final long serialVersionUID = 1L;
+
+        private final Pass pass;
+        private final int from;
+        private final int to;
+
+        AssignTask(Pass pass, int from, int to) {
+            this.pass = pass;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected PartialSums compute() {
+            if (to - from <= pass.chunkSize) {
+                return assignRange();
+            }
+            int mid = (from + to) >>> 1;
+            AssignTask left = new AssignTask(pass, from, mid);
+            AssignTask right = new AssignTask(pass, mid, to);
+            left.fork();
+            PartialSums result = right.compute();
+            result.merge(left.join());
+            return result;
+        }
+
+        private PartialSums assignRange() {
+            double[][] centroids = pass.centroids;
+            int k = centroids.length;
+            int dim = centroids[0].length;
+            PartialSums partial = new PartialSums(k, dim);
+            DistanceKernel kernel = DistanceKernel.get();
+            for (int r = from; r < to; r++) {
+                double[] features = pass.records.get(r).features();
+                int nearest = pass.packed != null ? kernel.nearestSquaredEuclidean(features, 0, pass.packed, k, dim)
+                        : nearestCentroid(features, centroids, pass.distance);
+                pass.assignments[r] = nearest;
+
+                CompensatedSum.add(partial.sums[nearest], partial.compensations[nearest], features, 0,
+                        pass.centered ? centroids[nearest] : null);
+                partial.counts[nearest]++;
+            }
+            return partial;
+        }
+    }
+
+    private void initCentroids() {
+        clusters = new ArrayList<>();
+        if (initialCentroids != null) {
+            for (Record centroid : initialCentroids) {
+                clusters.add(new Cluster(new Record(centroid.features().clone(), 0), clusters.size()));
+            }
+            return;
+        }
+        List<Record> centroids = initMode == InitMode.RANDOM
+                ? CentroidSeeding.random(records, k, random)
+                : CentroidSeeding.kMeansPlusPlus(records, k, random);
+        for (Record centroid : centroids) {
+            clusters.add(new Cluster(centroid, clusters.size()));
+        }
+    }
+
+    private static int nearestCentroid(double[] features, double[][] centroids, Distance distance) {
+        double minDist = Double.MAX_VALUE;
+        int nearest = 0;
+        for (int c = 0; c < centroids.length; c++) {
+            double dist = distance.reduced(features, 0, centroids[c]);
+            if (dist < minDist) {
+                minDist = dist;
+                nearest = c;
+            }
+        }
+        return nearest;
+    }
+
+    private double[][] currentCentroids() {
+        double[][] centroids = new double[k][];
+        for (int j = 0; j < k; j++) {
+            centroids[j] = clusters.get(j).getCentroid().features();
+        }
+        return centroids;
+    }
+
+    private List<Record> getNewCentroids(PartialSums totals, double[][] centroids) {
+        List<Record> newCentroids = new ArrayList<>();
+        for (int j = 0; j < k; j++) {
+            if (totals.counts[j] == 0) {
+                // If cluster is empty, reassign a random point to avoid disappearing clusters
+                newCentroids.add(records.get(random.nextInt(records.size())));
+            } else {
+                double[] centroid = totals.fold(j);
+                for (int i = 0; i < centroid.length; i++) {
+                    centroid[i] /= totals.counts[j];
+                    if (centeredAccumulation) {
+                        centroid[i] += centroids[j][i];
+                    }
+                }
+                newCentroids.add(new Record(centroid, 0));
+            }
+        }
+        return newCentroids;
+    }
+
+    private void collectPoints() {
+        for (Cluster cluster : clusters) {
+            cluster.clearPoints();
+        }
+        for (int r = 0; r < records.size(); r++) {
+            clusters.get(assignments[r]).addPoint(records.get(r));
+        }
+    }
+
+    public void run() {
+        initCentroids();
+        for (int i = 0; i < maxIterations; i++) {
+            double[][] centroids = currentCentroids();
+            double[] packed = distance instanceof Distance.SquaredEuclidean ? DistanceKernel.flatten(centroids) : null;
+            Pass pass = new Pass(records, assignments, centroids, packed, distance, centeredAccumulation, chunkSize);
+            PartialSums totals = pool.invoke(new AssignTask(pass, 0, records.size()));
+
+            List<Record> newCentroids = getNewCentroids(totals, centroids);
+            boolean converged = true;
+
+            for (int j = 0; j < k; j++) {
+                if (!Arrays.equals(newCentroids.get(j).features(), clusters.get(j).getCentroid().features())) {
+                    clusters.get(j).setCentroid(newCentroids.get(j));
+                    converged = false;
+                }
+            }
+
+            if (converged) {
+                System.out.println("Converged after " + (i + 1) + " iteration(s).");
+                break;
+            }
+        }
+        collectPoints();
+    }
+
+    public List<Cluster> getClusters() {
+        return clusters;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -11,6 +11,29 @@ public class KMeans {
     private final List<Record> records;
     private final int maxIterations;
     private List<Cluster> clusters;
+    private InitMode initMode = InitMode.KMEANS_PLUS_PLUS;
+    private Distance distance = new Distance.Euclidean();
+    // Centroids of a previous run to start from instead of seeding
+    private List<Record> initialCentroids;
+
+    // Stops once no centroid moves further than this
+    private double threshold = 0.0001;
+    // Sum the points relative to the current centroid, see CompensatedSum
+    private boolean centeredAccumulation;
+    // Centroids moving at most this far are frozen until their points change, 0 disables it
+    private double freezeThreshold = 0;
+    private boolean[] frozen;
+    private final List<IterationStats> history = new ArrayList<>();
+
+    // Cluster of every record in the last assignment step
+    private int[] assignments;
+    // Hamerly bounds used by the accelerated assignment step
+    private AssignmentMode assignmentMode = AssignmentMode.STANDARD;
+    private double[] upperBounds;
+    private double[] lowerBounds;
+
+    // Row-major copy of the records for the blocked assignment step
+    private double[] packedRecords;
 
     public KMeans(List<Record> records, int k, int maxIterations) {
         this.records = records;
@@ -19,13 +42,52 @@ public class KMeans {
         this.clusters = new ArrayList<>();
     }
 
+    public void setInitMode(InitMode initMode) {
+        this.initMode = initMode;
+    }
+
+    public void setAssignmentMode(AssignmentMode assignmentMode) {
+        this.assignmentMode = assignmentMode;
+    }
+
+    public void setDistance(Distance distance) {
+        this.distance = distance;
+    }
+
+    public void setThreshold(double threshold) {
+        this.threshold = threshold;
+    }
+
+    public void setFreezeThreshold(double freezeThreshold) {
+        this.freezeThreshold = freezeThreshold;
+    }
+
+    public void setCenteredAccumulation(boolean centeredAccumulation) {
+        this.centeredAccumulation = centeredAccumulation;
+    }
+
+    public void setInitialCentroids(List<Record> initialCentroids) {
+        CentroidFile.validate(initialCentroids, k, records.get(0).features().length);
+        this.initialCentroids = initialCentroids;
+    }
+
+    // Hamerly bounds rely on the triangle inequality
+    private boolean useBounds() {
+        return assignmentMode == AssignmentMode.TRIANGLE && distance.isMetric();
+    }
+
     private void initCentroids() {
-        Set<Integer> chosenIndexes = new HashSet<>();
-        while (chosenIndexes.size() < k) {
-            int idx = random.nextInt(records.size());
-            if (chosenIndexes.add(idx)) { // Ensure unique centroids
-                clusters.add(new Cluster(records.get(idx), clusters.size()));
+        if (initialCentroids != null) {
+            for (Record centroid : initialCentroids) {
+                clusters.add(new Cluster(new Record(centroid.features().clone(), 0), clusters.size()));
             }
+            return;
+        }
+        List<Record> centroids = initMode == InitMode.RANDOM
+                ? CentroidSeeding.random(records, k, random)
+                : CentroidSeeding.kMeansPlusPlus(records, k, random);
+        for (Record centroid : centroids) {
+            clusters.add(new Cluster(centroid, clusters.size()));
         }
     }
 
@@ -35,19 +97,64 @@ public class KMeans {
             cluster.clearPoints();
         }
 
+        if (useBounds()) {
+            assignWithBounds();
+            for (int r = 0; r < records.size(); r++) {
+                clusters.get(assignments[r]).addPoint(records.get(r));
+            }
+            return;
+        }
+
+        // Euclidean distances go through the batched kernel, one call per record
+        if (distance instanceof Distance.SquaredEuclidean) {
+            double[][] centroids = new double[k][];
+            for (int j = 0; j < k; j++) {
+                centroids[j] = clusters.get(j).getCentroid().features();
+            }
+            double[] packed = DistanceKernel.flatten(centroids);
+            int dim = centroids[0].length;
+            if (assignmentMode == AssignmentMode.BLOCKED) {
+                assignBlocked(packed, dim);
+                return;
+            }
+            DistanceKernel kernel = DistanceKernel.get();
+            for (int r = 0; r < records.size(); r++) {
+                assignments[r] = kernel.nearestSquaredEuclidean(records.get(r).features(), 0, packed, k, dim);
+                clusters.get(assignments[r]).addPoint(records.get(r));
+            }
+            return;
+        }
+
         // Assign each record to the nearest cluster
-        for (Record record : records) {
-            Cluster nearest = nearestCluster(record);
-            nearest.addPoint(record);
+        for (int r = 0; r < records.size(); r++) {
+            Cluster nearest = nearestCluster(records.get(r));
+            assignments[r] = nearest.getIndex();
+            nearest.addPoint(records.get(r));
         }
     }
 
-    private Cluster nearestCluster(Record record) {
+    private void assignBlocked(double[] centroids, int dim) {
+        if (packedRecords == null) {
+            double[][] rows = new double[records.size()][];
+            for (int r = 0; r < rows.length; r++) {
+                rows[r] = records.get(r).features();
+            }
+            packedRecords = DistanceKernel.flatten(rows);
+        }
+        BlockedAssignment.nearest(packedRecords, 0, records.size(), dim, centroids,
+                BlockedAssignment.norms(centroids, k, dim), assignments, 0);
+        for (int r = 0; r < records.size(); r++) {
+            clusters.get(assignments[r]).addPoint(records.get(r));
+        }
+    }
+
+    // Package-private so that the JMH benchmarks can call it
+    Cluster nearestCluster(Record record) {
         double minDist = Double.MAX_VALUE;
         Cluster nearest = null;
 
         for (Cluster cluster : clusters) {
-            double dist = calculateDistance(record.features(), cluster.getCentroid().features());
+            double dist = distance.reduced(record.features(), 0, cluster.getCentroid().features());
             if (dist < minDist) {
                 minDist = dist;
                 nearest = cluster;
@@ -56,58 +163,201 @@ public class KMeans {
         return nearest;
     }
 
-    private double calculateDistance(Double[] f1, Double[] f2) {
-        double dist = 0;
-        for (int i = 0; i < f1.length; i++) {
-            dist += Math.pow(f1[i] - f2[i], 2);
+    /*
+     * Hamerly's algorithm: every point keeps an upper bound on the distance to its
+     * own centroid and a lower bound on the distance to any other centroid. When the
+     * upper bound is below both the lower bound and half the distance from its centroid
+     * to the closest other centroid, the point cannot change cluster and is skipped.
+     */
+    private void assignWithBounds() {
+        if (upperBounds == null) {
+            upperBounds = new double[records.size()];
+            lowerBounds = new double[records.size()];
+            for (int r = 0; r < records.size(); r++) {
+                scanAllCentroids(r);
+            }
+            return;
+        }
+
+        double[] halfGap = new double[k];
+        for (int a = 0; a < k; a++) {
+            double min = Double.MAX_VALUE;
+            for (int b = 0; b < k; b++) {
+                if (a != b) {
+                    min = Math.min(min, calculateDistance(clusters.get(a).getCentroid().features(),
+                            clusters.get(b).getCentroid().features()));
+                }
+            }
+            halfGap[a] = min / 2;
+        }
+
+        for (int r = 0; r < records.size(); r++) {
+            int assigned = assignments[r];
+            double bound = Math.max(halfGap[assigned], lowerBounds[r]);
+            if (upperBounds[r] <= bound) {
+                continue;
+            }
+            // Tighten the upper bound before paying for a full scan
+            upperBounds[r] = calculateDistance(records.get(r).features(), clusters.get(assigned).getCentroid().features());
+            if (upperBounds[r] <= bound) {
+                continue;
+            }
+            scanAllCentroids(r);
+        }
+    }
+
+    private void scanAllCentroids(int r) {
+        double[] features = records.get(r).features();
+        double first = Double.MAX_VALUE;
+        double second = Double.MAX_VALUE;
+        int nearest = 0;
+
+        for (int j = 0; j < k; j++) {
+            double dist = calculateDistance(features, clusters.get(j).getCentroid().features());
+            if (dist < first) {
+                second = first;
+                first = dist;
+                nearest = j;
+            } else if (dist < second) {
+                second = dist;
+            }
+        }
+        assignments[r] = nearest;
+        upperBounds[r] = first;
+        lowerBounds[r] = second;
+    }
+
+    // Loosen the bounds by how far each centroid moved in the last update
+    private void updateBounds(double[] drift) {
+        int farthest = 0;
+        for (int j = 1; j < k; j++) {
+            if (drift[j] > drift[farthest]) {
+                farthest = j;
+            }
+        }
+        double secondFarthest = 0;
+        for (int j = 0; j < k; j++) {
+            if (j != farthest) {
+                secondFarthest = Math.max(secondFarthest, drift[j]);
+            }
+        }
+
+        for (int r = 0; r < records.size(); r++) {
+            int assigned = assignments[r];
+            upperBounds[r] += drift[assigned];
+            lowerBounds[r] -= assigned == farthest ? secondFarthest : drift[farthest];
         }
-        return Math.sqrt(dist);
+    }
+
+    private double calculateDistance(double[] f1, double[] f2) {
+        return distance.distance(f1, 0, f2);
     }
 
     private List<Record> getNewCentroids() {
         List<Record> newCentroids = new ArrayList<>();
         for (Cluster cluster : clusters) {
-            if (cluster.getPoints().isEmpty()) {
+            if (frozen[cluster.getIndex()]) {
+                newCentroids.add(cluster.getCentroid());
+            } else if (cluster.getPoints().isEmpty()) {
                 // If cluster is empty, reassign a random point to avoid disappearing clusters
                 newCentroids.add(records.get(random.nextInt(records.size())));
             } else {
-                newCentroids.add(getCentroid(cluster.getPoints()));
+                newCentroids.add(getCentroid(cluster.getPoints(),
+                        centeredAccumulation ? cluster.getCentroid().features() : null));
             }
         }
         return newCentroids;
     }
 
-    private Record getCentroid(List<Record> records) {
-        Double[] sum = new Double[records.get(0).features().length];
-        Arrays.fill(sum, 0.0);
+    // Package-private so that the JMH benchmarks can call it
+    Record getCentroid(List<Record> records) {
+        return getCentroid(records, null);
+    }
+
+    // Compensated mean of the records, summed relative to center when it is not null
+    Record getCentroid(List<Record> records, double[] center) {
+        double[] sum = new double[records.get(0).features().length];
+        double[] compensation = new double[sum.length];
 
         for (Record record : records) {
-            for (int i = 0; i < sum.length; i++) {
-                sum[i] += record.features()[i];
-            }
+            CompensatedSum.add(sum, compensation, record.features(), 0, center);
         }
+        CompensatedSum.fold(sum, compensation);
 
         for (int i = 0; i < sum.length; i++) {
             sum[i] /= records.size();
+            if (center != null) {
+                sum[i] += center[i];
+            }
         }
         return new Record(sum, 0);
     }
 
+    // Sum of squared distances from every record to the centroid it was assigned to
+    private double sse() {
+        double sse = 0;
+        for (int r = 0; r < records.size(); r++) {
+            sse += distance.cost(records.get(r).features(), 0,
+                    clusters.get(assignments[r]).getCentroid().features());
+        }
+        return sse;
+    }
+
     public void run() {
         initCentroids();
+        assignments = new int[records.size()];
+        Arrays.fill(assignments, -1);
+        frozen = new boolean[k];
+        history.clear();
+
         for (int i = 0; i < maxIterations; i++) {
+            int[] previous = assignments.clone();
             assignClusters();
+            long reassigned = 0;
+            boolean[] changed = new boolean[k];
+            for (int r = 0; r < previous.length; r++) {
+                if (assignments[r] != previous[r]) {
+                    reassigned++;
+                    changed[assignments[r]] = true;
+                    if (previous[r] >= 0) {
+                        changed[previous[r]] = true;
+                    }
+                }
+            }
+            double sse = sse();
 
+            // A frozen centroid is the exact mean of its points as long as they stay the same,
+            // and staying put also leaves the Hamerly bounds of its points tight
+            for (int j = 0; j < k; j++) {
+                frozen[j] &= !changed[j];
+            }
             List<Record> newCentroids = getNewCentroids();
-            boolean converged = true;
+            double[] drift = new double[k];
 
             for (int j = 0; j < k; j++) {
-                if (!Arrays.equals(newCentroids.get(j).features(), clusters.get(j).getCentroid().features())) {
-                    clusters.get(j).setCentroid(newCentroids.get(j));
-                    converged = false;
+                Cluster cluster = clusters.get(j);
+                if (frozen[j]) {
+                    continue;
+                }
+                drift[j] = calculateDistance(newCentroids.get(j).features(), cluster.getCentroid().features());
+                cluster.setCentroid(newCentroids.get(j));
+                if (freezeThreshold > 0 && !cluster.getPoints().isEmpty() && drift[j] <= freezeThreshold) {
+                    frozen[j] = true;
                 }
             }
 
+            int frozenCount = 0;
+            for (boolean f : frozen) {
+                frozenCount += f ? 1 : 0;
+            }
+            IterationStats stats = new IterationStats(i + 1, drift, sse, reassigned, frozenCount);
+            history.add(stats);
+            boolean converged = stats.maxShift() <= threshold;
+
+            if (useBounds() && !converged) {
+                updateBounds(drift);
+            }
+
             if (converged) {
                 System.out.println("Converged after " + (i + 1) + " iteration(s).");
                 break;
@@ -118,4 +368,8 @@ public class KMeans {
     public List<Cluster> getClusters() {
         return clusters;
     }
+
+    public List<IterationStats> getHistory() {
+        return Collections.unmodifiableList(history);
+    }
 }
@@ -1,7 +1,5 @@
 package unparallelled_kmeans;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
 import utils.*;
@@ -9,45 +7,64 @@ import utils.Record;
 
 public class Main {
     public static void main(String[] args) {
-        String filePath = "src/input/iris.data";
+        String filePath = args.length > 0 ? args[0] : "src/input/iris.data";
+        // Same values as the "distance" property of the Hadoop config.xml
+        Distance distance = Distance.parse(args.length > 1 ? args[1] : "2");
 
         List<Record> records = new ArrayList<>();
         List<String> labels = new ArrayList<>();
+        // Optional centroids of a previous run (text or binary) to warm-start from
+        List<Record> initialCentroids = null;
 
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            int idx = 0;
-            while ((line = br.readLine()) != null) {
-                String[] values = line.split(","); // Split by comma
-                Double[] featureVector = new Double[values.length - 1]; // Exclude last column for labels
+        // Optional mini-batch size; when given, MiniBatchKMeans runs instead of KMeans
+        int batchSize = args.length > 3 ? Integer.parseInt(args[3]) : 0;
 
-                // Parse features
-                for (int i = 0; i < values.length - 1; i++) {
-                    featureVector[i] = Double.parseDouble(values[i]);
-                }
-
-                records.add(new Record(featureVector, idx++));
-                labels.add(values[values.length - 1]); // Last column is the label
+        try {
+            DataLoader.load(filePath, records, labels);
+            // "-" skips the warm start when only a batch size is wanted
+            if (args.length > 2 && !args[2].equals("-")) {
+                initialCentroids = CentroidFile.read(args[2]);
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
 
         long startTime = System.nanoTime();
-        KMeans kMeans = new KMeans(records, 3, 100);
-        kMeans.run();
+        List<Cluster> clusters;
+        if (batchSize > 0) {
+            MiniBatchKMeans miniBatch = new MiniBatchKMeans(records, 3, 100, batchSize);
+            miniBatch.setDistance(distance);
+            if (initialCentroids != null) {
+                miniBatch.setInitialCentroids(initialCentroids);
+            }
+            miniBatch.run();
+            clusters = miniBatch.getClusters();
+        } else {
+            KMeans kMeans = new KMeans(records, 3, 100);
+            kMeans.setDistance(distance);
+            if (initialCentroids != null) {
+                kMeans.setInitialCentroids(initialCentroids);
+            }
+            kMeans.run();
+            clusters = kMeans.getClusters();
+            for (IterationStats stats : kMeans.getHistory()) {
+                System.out.println(stats);
+            }
+        }
         long endTime = System.nanoTime();
 
         // Print final centroids
         System.out.println("Final centroids coordinates: ");
-        for (Cluster cluster : kMeans.getClusters()) {
+        for (Cluster cluster : clusters) {
             System.out.println(Arrays.toString(cluster.getCentroid().features()));
         }
 
         double elapsedTime = (endTime - startTime) / 1e6; // Convert to milliseconds
         System.out.println("K-Means execution time: " + elapsedTime + " ms");
+        System.out.println("Distance kernel: " + DistanceKernel.get().name());
 
-        int[][] matrix = ContingencyMatrix.buildMatrix(kMeans.getClusters(), labels);
-        ContingencyMatrix.printMatrix(matrix);
+        ContingencyMatrix evaluation = ContingencyMatrix.of(clusters, labels);
+        ContingencyMatrix.printMatrix(evaluation.toArray());
+        evaluation.printMetrics();
     }
 }
@@ -0,0 +1,130 @@
+package unparallelled_kmeans;
+
+import java.util.*;
+import utils.*;
+import utils.Record;
+
+/*
+ * Mini-batch K-Means (Sculley, 2010). Every iteration draws batchSize records,
+ * assigns them to the current centroids and moves each centroid towards its
+ * points with a per-centroid learning rate of 1 / (points seen so far), so
+ * each iteration costs O(batchSize * k) instead of O(n * k). The run stops
+ * once no centroid moves more than the tolerance in an iteration. Points are
+ * assigned with the same pluggable Distance as KMeans.
+ */
+public class MiniBatchKMeans {
+    private final Random random = new Random(11);
+
+    private final int k;
+    private final List<Record> records;
+    private final int maxIterations;
+    private final int batchSize;
+    private double tolerance = 1e-3;
+    private Distance distance = new Distance.Euclidean();
+    private List<Record> initialCentroids;
+    private List<Cluster> clusters;
+
+    public MiniBatchKMeans(List<Record> records, int k, int maxIterations, int batchSize) {
+        this.records = records;
+        this.k = k;
+        this.maxIterations = maxIterations;
+        this.batchSize = Math.min(batchSize, records.size());
+        this.clusters = new ArrayList<>();
+    }
+
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public void setDistance(Distance distance) {
+        this.distance = distance;
+    }
+
+    public void setInitialCentroids(List<Record> initialCentroids) {
+        CentroidFile.validate(initialCentroids, k, records.get(0).features().length);
+        this.initialCentroids = initialCentroids;
+    }
+
+    private void initCentroids() {
+        clusters = new ArrayList<>();
+        if (initialCentroids != null) {
+            for (Record centroid : initialCentroids) {
+                clusters.add(new Cluster(new Record(centroid.features().clone(), 0), clusters.size()));
+            }
+            return;
+        }
+        // Seed from a sample a few batches large instead of the whole dataset
+        int sampleSize = Math.min(records.size(), Math.max(3 * batchSize, k));
+        List<Record> sample = new ArrayList<>(sampleSize);
+        for (int i = 0; i < sampleSize; i++) {
+            sample.add(records.get(random.nextInt(records.size())));
+        }
+        for (Record centroid : CentroidSeeding.kMeansPlusPlus(sample, k, random)) {
+            clusters.add(new Cluster(new Record(centroid.features().clone(), 0), clusters.size()));
+        }
+    }
+
+    private int nearestCentroid(double[] features) {
+        double min = Double.MAX_VALUE;
+        int nearest = 0;
+        for (int j = 0; j < k; j++) {
+            double reduced = distance.reduced(features, 0, clusters.get(j).getCentroid().features());
+            if (reduced < min) {
+                min = reduced;
+                nearest = j;
+            }
+        }
+        return nearest;
+    }
+
+    public void run() {
+        initCentroids();
+        long[] seen = new long[k];
+        Record[] batch = new Record[batchSize];
+        int[] nearest = new int[batchSize];
+
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            double[][] previous = new double[k][];
+            for (int j = 0; j < k; j++) {
+                previous[j] = clusters.get(j).getCentroid().features().clone();
+            }
+
+            // Assign the whole batch against the same centroids before moving any of them
+            for (int b = 0; b < batchSize; b++) {
+                batch[b] = records.get(random.nextInt(records.size()));
+                nearest[b] = nearestCentroid(batch[b].features());
+            }
+
+            for (int b = 0; b < batchSize; b++) {
+                int j = nearest[b];
+                seen[j]++;
+                double rate = 1.0 / seen[j];
+                double[] centroid = clusters.get(j).getCentroid().features();
+                double[] features = batch[b].features();
+                for (int i = 0; i < centroid.length; i++) {
+                    centroid[i] += rate * (features[i] - centroid[i]);
+                }
+            }
+
+            double maxShift = 0;
+            for (int j = 0; j < k; j++) {
+                double[] centroid = clusters.get(j).getCentroid().features();
+                maxShift = Math.max(maxShift, distance.distance(centroid, 0, previous[j]));
+            }
+
+            if (maxShift <= tolerance) {
+                System.out.println("Converged after " + (iteration + 1) + " iteration(s).");
+                break;
+            }
+        }
+
+        // One full pass so that the clusters hold their final points
+        for (Record record : records) {
+            clusters.get(nearestCentroid(record.features())).addPoint(record);
+        }
+    }
+
+    public List<Cluster> getClusters() {
+        return clusters;
+    }
+}
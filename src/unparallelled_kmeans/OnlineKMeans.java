@@ -0,0 +1,198 @@
+package unparallelled_kmeans;
+
+import java.util.*;
+import utils.*;
+import utils.Record;
+
+/*
+ * K-Means over records that keep arriving, without a fixed dataset. Every call to
+ * update() is one batch: with batch sums s_j over m_j points the centroids move to
+ *   c_j = (decay * w_j * c_j + s_j) / (decay * w_j + m_j),   w_j = decay * w_j + m_j
+ * so a decay below 1 forgets old batches geometrically (1 keeps the plain running
+ * mean). The first k distinct records seed the centroids. Every reseedInterval
+ * batches, clusters whose weight fell under deadFraction of the total are moved
+ * to the batch point farthest from its centroid.
+ *
+ * Updates are serialized; readers use snapshot(), an immutable copy published
+ * after every batch, so they never block on or observe a half-applied update.
+ */
+public class OnlineKMeans {
+
+    // Centroids and weights as of one batch, safe to share between threads
+    public record Snapshot(List<Record> centroids, double[] weights, long batches, long pointsSeen) {
+        @Override
+        public double[] weights() {
+            return weights.clone();
+        }
+
+        public int nearest(double[] features, Distance distance) {
+            int nearest = -1;
+            double minDist = Double.MAX_VALUE;
+            for (int j = 0; j < centroids.size(); j++) {
+                double dist = distance.reduced(features, 0, centroids.get(j).features());
+                if (dist < minDist) {
+                    minDist = dist;
+                    nearest = j;
+                }
+            }
+            return nearest;
+        }
+    }
+
+    private final int k;
+    private double decay = 1.0;
+    private double deadFraction = 1e-3;
+    private int reseedInterval = 10;
+    private Distance distance = new Distance.Euclidean();
+
+    private final List<double[]> centroids = new ArrayList<>();
+    private double[] weights;
+    private long batches;
+    private long pointsSeen;
+    private volatile Snapshot snapshot = new Snapshot(List.of(), new double[0], 0, 0);
+
+    public OnlineKMeans(int k) {
+        this.k = k;
+        this.weights = new double[k];
+    }
+
+    public synchronized void setDecay(double decay) {
+        if (!(decay > 0 && decay <= 1)) {
+            throw new IllegalArgumentException("Decay must be in (0, 1]: " + decay);
+        }
+        this.decay = decay;
+    }
+
+    public synchronized void setDeadFraction(double deadFraction) {
+        this.deadFraction = deadFraction;
+    }
+
+    public synchronized void setReseedInterval(int reseedInterval) {
+        this.reseedInterval = reseedInterval;
+    }
+
+    public synchronized void setDistance(Distance distance) {
+        this.distance = distance;
+    }
+
+    public void update(Record record) {
+        update(List.of(record));
+    }
+
+    public synchronized void update(List<Record> batch) {
+        checkDimensions(batch);
+        int start = seed(batch);
+        if (start == batch.size()) {
+            publish();
+            return;
+        }
+
+        int dim = centroids.get(0).length;
+        double[][] sums = new double[k][dim];
+        long[] counts = new long[k];
+        Record farthest = null;
+        double farthestDist = -1;
+
+        // Assign the whole batch against the same centroids before moving any of them
+        for (int b = start; b < batch.size(); b++) {
+            double[] features = batch.get(b).features();
+            int nearest = 0;
+            double minDist = Double.MAX_VALUE;
+            for (int j = 0; j < k; j++) {
+                double dist = distance.reduced(features, 0, centroids.get(j));
+                if (dist < minDist) {
+                    minDist = dist;
+                    nearest = j;
+                }
+            }
+            double[] sum = sums[nearest];
+            for (int i = 0; i < dim; i++) {
+                sum[i] += features[i];
+            }
+            counts[nearest]++;
+            if (minDist > farthestDist) {
+                farthestDist = minDist;
+                farthest = batch.get(b);
+            }
+        }
+
+        for (int j = 0; j < k; j++) {
+            double kept = decay * weights[j];
+            weights[j] = kept + counts[j];
+            if (counts[j] > 0) {
+                double[] centroid = centroids.get(j);
+                for (int i = 0; i < dim; i++) {
+                    centroid[i] = (kept * centroid[i] + sums[j][i]) / weights[j];
+                }
+            }
+        }
+        pointsSeen += batch.size() - start;
+        batches++;
+
+        if (reseedInterval > 0 && batches % reseedInterval == 0 && farthest != null) {
+            reseedDeadClusters(farthest);
+        }
+        publish();
+    }
+
+    // The whole batch is checked first, so a bad record leaves the model as it was
+    private void checkDimensions(List<Record> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int dim = centroids.isEmpty() ? batch.get(0).features().length : centroids.get(0).length;
+        for (int b = 0; b < batch.size(); b++) {
+            int n = batch.get(b).features().length;
+            if (n != dim) {
+                throw new IllegalArgumentException("Record " + b + " of the batch has " + n
+                        + " features, expected " + dim);
+            }
+        }
+    }
+
+    // Takes distinct records as initial centroids until there are k, returns the first unused index
+    private int seed(List<Record> batch) {
+        int b = 0;
+        for (; b < batch.size() && centroids.size() < k; b++) {
+            double[] features = batch.get(b).features();
+            boolean duplicate = false;
+            for (double[] centroid : centroids) {
+                duplicate |= Arrays.equals(centroid, features);
+            }
+            if (!duplicate) {
+                weights[centroids.size()] = 1;
+                centroids.add(features.clone());
+            }
+            pointsSeen++;
+        }
+        return b;
+    }
+
+    private void reseedDeadClusters(Record farthest) {
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        for (int j = 0; j < k; j++) {
+            if (weights[j] < deadFraction * total) {
+                // Only one replacement point per batch, the others wait for the next reseed
+                centroids.set(j, farthest.features().clone());
+                weights[j] = 1;
+                return;
+            }
+        }
+    }
+
+    private void publish() {
+        List<Record> copies = new ArrayList<>(centroids.size());
+        for (int j = 0; j < centroids.size(); j++) {
+            copies.add(new Record(centroids.get(j).clone(), j));
+        }
+        snapshot = new Snapshot(Collections.unmodifiableList(copies),
+                Arrays.copyOf(weights, centroids.size()), batches, pointsSeen);
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+}
@@ -0,0 +1,305 @@
+package unparallelled_kmeans;
+
+import java.io.IOException;
+import java.util.*;
+import utils.*;
+import utils.Record;
+
+/*
+ * Out-of-core K-Means over a dataset file (.kmb or CSV). Instead of holding a
+ * List<Record>, every iteration streams the file with a BlockReader, which reads
+ * the next block while the current one is assigned, so memory holds two blocks,
+ * the k compensated sums and counts and, with setKeepAssignments, one int per row
+ * (used to count the points that changed cluster). Seeding runs on a reservoir
+ * sample drawn in one extra pass. A centroid that loses all its points stays
+ * where it is, since there is no list to draw a replacement from.
+ */
+public class StreamingKMeans {
+    private final Random random = new Random(11);
+
+    private final String path;
+    private final int k;
+    private final int maxIterations;
+    private int blockRows = 1 << 16;
+    private int sampleSize = 10_000;
+    private InitMode initMode = InitMode.KMEANS_PLUS_PLUS;
+    private Distance distance = new Distance.Euclidean();
+    private double threshold = 0.0001;
+    private boolean keepAssignments;
+    private boolean centeredAccumulation;
+    private List<Record> initialCentroids;
+
+    private double[][] centroids;
+    private long[] sizes;
+    // Cluster of every row in the last pass, -1 before the first; grows while the row count is unknown
+    private int[] assignments;
+    private long rows;
+    private final List<IterationStats> history = new ArrayList<>();
+
+    public StreamingKMeans(String path, int k, int maxIterations) {
+        this.path = path;
+        this.k = k;
+        this.maxIterations = maxIterations;
+    }
+
+    public void setBlockRows(int blockRows) {
+        this.blockRows = blockRows;
+    }
+
+    public void setSampleSize(int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
+    public void setInitMode(InitMode initMode) {
+        this.initMode = initMode;
+    }
+
+    public void setDistance(Distance distance) {
+        this.distance = distance;
+    }
+
+    public void setThreshold(double threshold) {
+        this.threshold = threshold;
+    }
+
+    // Keeps one int per row (at most 2^31 rows) so that reassigned points can be counted
+    public void setKeepAssignments(boolean keepAssignments) {
+        this.keepAssignments = keepAssignments;
+    }
+
+    public void setCenteredAccumulation(boolean centeredAccumulation) {
+        this.centeredAccumulation = centeredAccumulation;
+    }
+
+    public void setInitialCentroids(List<Record> initialCentroids) {
+        this.initialCentroids = initialCentroids;
+    }
+
+    private void initCentroids() throws IOException {
+        List<Record> seeds = initialCentroids;
+        if (seeds != null) {
+            // The dimension is checked against the file by the first pass
+            CentroidFile.validate(seeds, k, seeds.get(0).features().length);
+        } else {
+            List<Record> sample = sample();
+            seeds = initMode == InitMode.RANDOM
+                    ? CentroidSeeding.random(sample, k, random)
+                    : CentroidSeeding.kMeansPlusPlus(sample, k, random);
+        }
+        centroids = new double[k][];
+        for (int j = 0; j < k; j++) {
+            centroids[j] = seeds.get(j).features().clone();
+        }
+    }
+
+    // Uniform sample of sampleSize rows (reservoir sampling), which also counts the rows
+    private List<Record> sample() throws IOException {
+        List<Record> sample = new ArrayList<>();
+        rows = 0;
+        try (BlockReader reader = BlockReader.open(path, blockRows, false)) {
+            int dim = reader.dim();
+            for (BlockReader.Block block; (block = reader.next()) != null; ) {
+                for (int r = 0; r < block.rows; r++, rows++) {
+                    long draw = sample.size() < sampleSize ? sample.size() : nextLong(rows + 1);
+                    if (draw >= sampleSize) {
+                        continue;
+                    }
+                    int slot = (int) draw;
+                    Record record = new Record(Arrays.copyOfRange(block.data, r * dim, (r + 1) * dim), (int) rows);
+                    if (slot == sample.size()) {
+                        sample.add(record);
+                    } else {
+                        sample.set(slot, record);
+                    }
+                }
+            }
+        }
+        if (sample.size() < k) {
+            throw new IllegalArgumentException(path + " has " + rows + " rows, fewer than k = " + k);
+        }
+        return sample;
+    }
+
+    private long nextLong(long bound) {
+        return bound <= Integer.MAX_VALUE ? random.nextInt((int) bound) : Math.floorMod(random.nextLong(), bound);
+    }
+
+    // Index of the nearest centroid; cost[0] receives the cost (squared distance) of the row
+    private int nearest(double[] data, int offset, double[] packed, double[] cost) {
+        int dim = centroids[0].length;
+        if (packed != null) {
+            DistanceKernel kernel = DistanceKernel.get();
+            int nearest = kernel.nearestSquaredEuclidean(data, offset, packed, k, dim);
+            cost[0] = kernel.squaredEuclidean(data, offset, packed, nearest * dim, dim);
+            return nearest;
+        }
+        double min = Double.MAX_VALUE;
+        int nearest = 0;
+        for (int j = 0; j < k; j++) {
+            double reduced = distance.reduced(data, offset, centroids[j]);
+            if (reduced < min) {
+                min = reduced;
+                nearest = j;
+            }
+        }
+        cost[0] = distance.cost(data, offset, centroids[nearest]);
+        return nearest;
+    }
+
+    private double[] packedCentroids() {
+        return distance instanceof Distance.SquaredEuclidean ? DistanceKernel.flatten(centroids) : null;
+    }
+
+    // One pass over the file: assigns every row, then moves every centroid to the mean of its rows
+    private IterationStats iterate(int iteration) throws IOException {
+        int dim = centroids[0].length;
+        double[][] sums = new double[k][dim];
+        double[][] compensations = new double[k][dim];
+        long[] counts = new long[k];
+        double[] packed = packedCentroids();
+        double[] cost = new double[1];
+        double sse = 0;
+        long reassigned = keepAssignments ? 0 : -1;
+        long seen = 0;
+
+        try (BlockReader reader = BlockReader.open(path, blockRows, false)) {
+            if (reader.dim() != dim) {
+                throw new IllegalArgumentException(path + " has " + reader.dim() + " features, the centroids " + dim);
+            }
+            for (BlockReader.Block block; (block = reader.next()) != null; ) {
+                if (keepAssignments) {
+                    growAssignments(block.firstRow + block.rows);
+                }
+                double[] data = block.data;
+                for (int r = 0; r < block.rows; r++) {
+                    int offset = r * dim;
+                    int nearest = nearest(data, offset, packed, cost);
+                    sse += cost[0];
+                    CompensatedSum.add(sums[nearest], compensations[nearest], data, offset,
+                            centeredAccumulation ? centroids[nearest] : null);
+                    counts[nearest]++;
+                    if (keepAssignments) {
+                        int row = (int) (block.firstRow + r);
+                        if (assignments[row] != nearest) {
+                            reassigned++;
+                            assignments[row] = nearest;
+                        }
+                    }
+                }
+                seen += block.rows;
+            }
+        }
+        rows = seen;
+
+        double[] shifts = new double[k];
+        for (int j = 0; j < k; j++) {
+            if (counts[j] == 0) {
+                continue;
+            }
+            double[] mean = sums[j];
+            CompensatedSum.fold(mean, compensations[j]);
+            for (int i = 0; i < dim; i++) {
+                mean[i] /= counts[j];
+                if (centeredAccumulation) {
+                    mean[i] += centroids[j][i];
+                }
+            }
+            shifts[j] = distance.distance(mean, 0, centroids[j]);
+            centroids[j] = mean;
+        }
+        sizes = counts;
+        return new IterationStats(iteration, shifts, sse, reassigned, 0);
+    }
+
+    private void growAssignments(long needed) {
+        if (needed > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Assignments are only kept for up to 2^31 rows");
+        }
+        if (assignments == null || assignments.length < needed) {
+            int length = assignments == null ? 0 : assignments.length;
+            assignments = assignments == null ? new int[(int) needed]
+                    : Arrays.copyOf(assignments, (int) Math.min(Integer.MAX_VALUE, Math.max(needed, 2L * length)));
+            Arrays.fill(assignments, length, assignments.length, -1);
+        }
+    }
+
+    public void run() throws IOException {
+        history.clear();
+        assignments = null;
+        rows = 0;
+        initCentroids();
+        // The sampling pass counted the rows, otherwise the first pass grows the array
+        if (keepAssignments && rows > 0) {
+            growAssignments(rows);
+        }
+
+        for (int i = 0; i < maxIterations; i++) {
+            IterationStats stats = iterate(i + 1);
+            history.add(stats);
+            if (stats.maxShift() <= threshold) {
+                System.out.println("Converged after " + (i + 1) + " iteration(s).");
+                break;
+            }
+        }
+        // Rows past the end were only reserved while the row count was unknown
+        if (assignments != null && assignments.length > rows) {
+            assignments = Arrays.copyOf(assignments, (int) rows);
+        }
+    }
+
+    // Contingency matrix of the final centroids against the labels of the file, in one more pass
+    public ContingencyMatrix evaluate() throws IOException {
+        int dim = centroids[0].length;
+        double[] packed = packedCentroids();
+        double[] cost = new double[1];
+        List<long[]> perLabel = new ArrayList<>();
+        List<String> names;
+
+        try (BlockReader reader = BlockReader.open(path, blockRows, true)) {
+            for (BlockReader.Block block; (block = reader.next()) != null; ) {
+                for (int r = 0; r < block.rows; r++) {
+                    int label = block.labels[r];
+                    while (perLabel.size() <= label) {
+                        perLabel.add(new long[k]);
+                    }
+                    perLabel.get(label)[nearest(block.data, r * dim, packed, cost)]++;
+                }
+            }
+            names = reader.labelNames();
+        }
+
+        ContingencyMatrix matrix = new ContingencyMatrix(k);
+        for (int label = 0; label < perLabel.size(); label++) {
+            for (int j = 0; j < k; j++) {
+                matrix.add(j, names.get(label), perLabel.get(label)[j]);
+            }
+        }
+        return matrix;
+    }
+
+    public List<Record> getCentroids() {
+        List<Record> result = new ArrayList<>();
+        for (double[] centroid : centroids) {
+            result.add(new Record(centroid.clone(), 0));
+        }
+        return result;
+    }
+
+    // Rows of every cluster in the last pass
+    public long[] getSizes() {
+        return sizes.clone();
+    }
+
+    // Cluster of every row in the last pass, null unless assignments are kept
+    public int[] getAssignments() {
+        return assignments;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public List<IterationStats> getHistory() {
+        return Collections.unmodifiableList(history);
+    }
+}
@@ -0,0 +1,43 @@
+package unparallelled_kmeans;
+
+import java.io.IOException;
+import java.util.*;
+import utils.*;
+import utils.Record;
+
+// Same arguments as Main, but the dataset is streamed from disk every iteration instead of loaded
+public class StreamingMain {
+    public static void main(String[] args) throws IOException {
+        String filePath = args.length > 0 ? args[0] : "src/input/iris.data";
+        // Same values as the "distance" property of the Hadoop config.xml
+        Distance distance = Distance.parse(args.length > 1 ? args[1] : "2");
+
+        long startTime = System.nanoTime();
+        StreamingKMeans kMeans = new StreamingKMeans(filePath, 3, 100);
+        kMeans.setDistance(distance);
+        kMeans.setKeepAssignments(true);
+        if (args.length > 2) {
+            kMeans.setInitialCentroids(CentroidFile.read(args[2]));
+        }
+        kMeans.run();
+        long endTime = System.nanoTime();
+
+        for (IterationStats stats : kMeans.getHistory()) {
+            System.out.println(stats);
+        }
+
+        // Print final centroids
+        System.out.println("Final centroids coordinates: ");
+        for (Record centroid : kMeans.getCentroids()) {
+            System.out.println(Arrays.toString(centroid.features()));
+        }
+
+        double elapsedTime = (endTime - startTime) / 1e6; // Convert to milliseconds
+        System.out.println("K-Means execution time: " + elapsedTime + " ms");
+        System.out.println("Distance kernel: " + DistanceKernel.get().name());
+
+        ContingencyMatrix evaluation = kMeans.evaluate();
+        ContingencyMatrix.printMatrix(evaluation.toArray());
+        evaluation.printMetrics();
+    }
+}
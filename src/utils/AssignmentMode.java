@@ -0,0 +1,10 @@
+package utils;
+
+public enum AssignmentMode {
+    // Distance from every point to every centroid, every iteration
+    STANDARD,
+    // Hamerly bounds skip points whose cluster provably cannot change
+    TRIANGLE,
+    // Tiles of points against all centroids as a blocked matrix product (Euclidean only)
+    BLOCKED
+}
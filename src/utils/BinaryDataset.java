@@ -0,0 +1,254 @@
+package utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+ * Binary dataset format (.kmb), all values little-endian:
+ *   header (32 bytes): int magic, int dim, long rows, int numLabels, int unused, long dictionaryOffset
+ *   features: rows * dim doubles, row-major
+ *   labels:   rows ints, index into the label dictionary
+ *   dictionary: numLabels entries of (int byteLength, UTF-8 bytes)
+ * The converter turns the CSV layout (features then a trailing label column) into
+ * this format once; readers then memory-map the features instead of parsing text.
+ */
+public class BinaryDataset implements Closeable {
+    public static final int MAGIC = 0x31424D4B; // "KMB1"
+    public static final int HEADER_BYTES = 32;
+    public static final String EXTENSION = ".kmb";
+
+    private final FileChannel channel;
+    private final int dim;
+    private final long rows;
+    private final List<String> labelNames;
+    // Features are mapped in segments of whole rows since one mapping is limited to 2 GB
+    private final ByteBuffer[] segments;
+    private final int rowsPerSegment;
+    private final ByteBuffer[] labelSegments;
+    private static final int LABELS_PER_SEGMENT = Integer.MAX_VALUE / 4;
+
+    private BinaryDataset(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a binary dataset file");
+        }
+        this.dim = header.getInt();
+        this.rows = header.getLong();
+        int numLabels = header.getInt();
+        header.getInt();
+        long dictionaryOffset = header.getLong();
+
+        long rowBytes = 8L * Math.max(dim, 1);
+        this.rowsPerSegment = (int) Math.max(1, Integer.MAX_VALUE / rowBytes);
+        int numSegments = (int) ((rows + rowsPerSegment - 1) / rowsPerSegment);
+        this.segments = new ByteBuffer[numSegments];
+        for (int s = 0; s < numSegments; s++) {
+            long first = (long) s * rowsPerSegment;
+            long count = Math.min(rowsPerSegment, rows - first);
+            segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + first * rowBytes, count * rowBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        long labelsOffset = HEADER_BYTES + rows * 8L * dim;
+        int numLabelSegments = (int) ((rows + LABELS_PER_SEGMENT - 1) / LABELS_PER_SEGMENT);
+        this.labelSegments = new ByteBuffer[numLabelSegments];
+        for (int s = 0; s < numLabelSegments; s++) {
+            long first = (long) s * LABELS_PER_SEGMENT;
+            long count = Math.min(LABELS_PER_SEGMENT, rows - first);
+            labelSegments[s] = channel.map(FileChannel.MapMode.READ_ONLY, labelsOffset + 4 * first, 4 * count)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        ByteBuffer dictionary = channel.map(FileChannel.MapMode.READ_ONLY, dictionaryOffset,
+                channel.size() - dictionaryOffset).order(ByteOrder.LITTLE_ENDIAN);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < numLabels; i++) {
+            byte[] bytes = new byte[dictionary.getInt()];
+            dictionary.get(bytes);
+            names.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        this.labelNames = Collections.unmodifiableList(names);
+    }
+
+    public static BinaryDataset open(String path) throws IOException {
+        return new BinaryDataset(FileChannel.open(Paths.get(path), StandardOpenOption.READ));
+    }
+
+    public static boolean isBinary(String path) {
+        return path.endsWith(EXTENSION);
+    }
+
+    public int dim() {
+        return dim;
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    public List<String> labelNames() {
+        return labelNames;
+    }
+
+    public double get(long row, int column) {
+        ByteBuffer segment = segments[(int) (row / rowsPerSegment)];
+        return segment.getDouble((int) (row % rowsPerSegment) * dim * 8 + column * 8);
+    }
+
+    // Copies the features of one row into out[offset, offset + dim)
+    public void read(long row, double[] out, int offset) {
+        ByteBuffer segment = segments[(int) (row / rowsPerSegment)];
+        int base = (int) (row % rowsPerSegment) * dim * 8;
+        for (int i = 0; i < dim; i++) {
+            out[offset + i] = segment.getDouble(base + i * 8);
+        }
+    }
+
+    // Copies rows [first, first + count) into out[0, count * dim) in bulk, segment by segment
+    public void read(long first, int count, double[] out) {
+        int done = 0;
+        while (done < count) {
+            long row = first + done;
+            int inSegment = (int) (row % rowsPerSegment);
+            int n = Math.min(count - done, rowsPerSegment - inSegment);
+            // duplicate() does not keep the byte order
+            ByteBuffer view = segments[(int) (row / rowsPerSegment)].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            view.position(inSegment * dim * 8);
+            view.asDoubleBuffer().get(out, done * dim, n * dim);
+            done += n;
+        }
+    }
+
+    // Label ids of rows [first, first + count) into out[0, count)
+    public void readLabelIds(long first, int count, int[] out) {
+        int done = 0;
+        while (done < count) {
+            long row = first + done;
+            int inSegment = (int) (row % LABELS_PER_SEGMENT);
+            int n = Math.min(count - done, LABELS_PER_SEGMENT - inSegment);
+            ByteBuffer view = labelSegments[(int) (row / LABELS_PER_SEGMENT)].duplicate()
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            view.position(inSegment * 4);
+            view.asIntBuffer().get(out, done, n);
+            done += n;
+        }
+    }
+
+    public int labelId(long row) {
+        return labelSegments[(int) (row / LABELS_PER_SEGMENT)].getInt((int) (row % LABELS_PER_SEGMENT) * 4);
+    }
+
+    public String label(long row) {
+        return labelNames.get(labelId(row));
+    }
+
+    // Same result as DataLoader.loadCsv on the CSV the file was converted from
+    public void load(List<Record> records, List<String> labels) {
+        for (long row = 0; row < rows; row++) {
+            double[] features = new double[dim];
+            read(row, features, 0);
+            records.add(new Record(features, (int) row));
+            labels.add(label(row));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static void convert(String csvPath, String binaryPath) throws IOException {
+        Path labelsTmp = Files.createTempFile("kmb-labels", ".tmp");
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        long rows = 0;
+        int dim = -1;
+
+        try (FileChannel out = FileChannel.open(Paths.get(binaryPath), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                BufferedReader br = new BufferedReader(new FileReader(csvPath));
+                FileChannel labelsOut = FileChannel.open(labelsTmp, StandardOpenOption.WRITE)) {
+            ByteBuffer features = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer labelIds = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            out.position(HEADER_BYTES);
+
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] values = line.split(",");
+                if (dim < 0) {
+                    dim = values.length - 1;
+                } else if (values.length - 1 != dim) {
+                    throw new IOException("Row " + rows + " has " + (values.length - 1) + " features, expected " + dim);
+                }
+
+                if (features.remaining() < 8 * dim) {
+                    writeFully(out, features);
+                }
+                for (int i = 0; i < dim; i++) {
+                    features.putDouble(Double.parseDouble(values[i]));
+                }
+
+                if (labelIds.remaining() < 4) {
+                    writeFully(labelsOut, labelIds);
+                }
+                labelIds.putInt(dictionary.computeIfAbsent(values[dim], label -> dictionary.size()));
+                rows++;
+            }
+            writeFully(out, features);
+            writeFully(labelsOut, labelIds);
+        }
+
+        try (FileChannel out = FileChannel.open(Paths.get(binaryPath), StandardOpenOption.WRITE);
+                FileChannel labelsIn = FileChannel.open(labelsTmp, StandardOpenOption.READ)) {
+            long labelsOffset = HEADER_BYTES + rows * 8L * Math.max(dim, 0);
+            long labelsBytes = labelsIn.size();
+            long copied = 0;
+            while (copied < labelsBytes) {
+                copied += labelsIn.transferTo(copied, labelsBytes - copied, out.position(labelsOffset + copied));
+            }
+
+            long dictionaryOffset = labelsOffset + labelsBytes;
+            out.position(dictionaryOffset);
+            for (String label : dictionary.keySet()) {
+                byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer entry = ByteBuffer.allocate(4 + bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+                entry.putInt(bytes.length).put(bytes);
+                writeFully(out, entry);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(Math.max(dim, 0)).putLong(rows).putInt(dictionary.size()).putInt(0)
+                    .putLong(dictionaryOffset);
+            out.position(0);
+            writeFully(out, header);
+        } finally {
+            Files.deleteIfExists(labelsTmp);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: <input.csv> <output" + EXTENSION + ">");
+            System.exit(1);
+        }
+        convert(args[0], args[1]);
+    }
+}
@@ -0,0 +1,231 @@
+package utils;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * Reads a dataset (binary .kmb or CSV) front to back in blocks of rows. A
+ * background thread fills the next block while the caller works on the current
+ * one; two blocks circulate between the threads, so memory stays at two blocks
+ * whatever the size of the file. Binary rows are copied in bulk out of
+ * BinaryDataset's mapping, CSV lines are parsed like DataLoader.loadCsv.
+ */
+public class BlockReader implements Closeable {
+
+    // Rows [firstRow, firstRow + rows) stored row-major, with their label ids when labels were requested
+    public static class Block {
+        public final double[] data;
+        public final int[] labels;
+        public long firstRow;
+        public int rows;
+
+        private Block(int capacity, int dim, boolean labels) {
+            this.data = new double[capacity * dim];
+            this.labels = labels ? new int[capacity] : null;
+        }
+    }
+
+    private interface Source extends Closeable {
+        int dim();
+
+        // Fills up to capacity rows of the block, returns the number read, 0 at the end of the data
+        int fill(Block block, int capacity) throws IOException;
+
+        // Label of every id, complete once the data has been read
+        List<String> labelNames();
+    }
+
+    private static class BinarySource implements Source {
+        private final BinaryDataset dataset;
+        private long next;
+
+        BinarySource(String path) throws IOException {
+            this.dataset = BinaryDataset.open(path);
+        }
+
+        public int dim() {
+            return dataset.dim();
+        }
+
+        public int fill(Block block, int capacity) {
+            int n = (int) Math.min(capacity, dataset.rows() - next);
+            dataset.read(next, n, block.data);
+            if (block.labels != null) {
+                dataset.readLabelIds(next, n, block.labels);
+            }
+            next += n;
+            return n;
+        }
+
+        public List<String> labelNames() {
+            return dataset.labelNames();
+        }
+
+        public void close() throws IOException {
+            dataset.close();
+        }
+    }
+
+    private static class CsvSource implements Source {
+        private final BufferedReader reader;
+        private final Map<String, Integer> labelIds = new HashMap<>();
+        private final List<String> labelNames = new ArrayList<>();
+        private final int dim;
+        // First line, read ahead to learn the dimension
+        private String pending;
+        private long rows;
+
+        CsvSource(String path) throws IOException {
+            this.reader = new BufferedReader(new FileReader(path), 1 << 20);
+            do {
+                pending = reader.readLine();
+            } while (pending != null && pending.isEmpty());
+            this.dim = pending == null ? 0 : pending.split(",").length - 1;
+        }
+
+        public int dim() {
+            return dim;
+        }
+
+        public int fill(Block block, int capacity) throws IOException {
+            int n = 0;
+            while (n < capacity) {
+                String line = pending != null ? pending : reader.readLine();
+                pending = null;
+                if (line == null) {
+                    break;
+                }
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] values = line.split(",");
+                if (values.length - 1 != dim) {
+                    throw new IOException("Row " + rows + " has " + (values.length - 1) + " features, expected " + dim);
+                }
+                int offset = n * dim;
+                for (int i = 0; i < dim; i++) {
+                    block.data[offset + i] = Double.parseDouble(values[i]);
+                }
+                if (block.labels != null) {
+                    block.labels[n] = labelIds.computeIfAbsent(values[dim], label -> {
+                        labelNames.add(label);
+                        return labelNames.size() - 1;
+                    });
+                }
+                n++;
+                rows++;
+            }
+            return n;
+        }
+
+        public List<String> labelNames() {
+            return labelNames;
+        }
+
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    // Queued by the reading thread after the last block
+    private static final Block END = new Block(0, 0, false);
+
+    private final String path;
+    private final Source source;
+    private final int blockRows;
+    private final BlockingQueue<Block> free = new ArrayBlockingQueue<>(2);
+    // Both blocks and the end marker
+    private final BlockingQueue<Block> filled = new ArrayBlockingQueue<>(3);
+    private final Thread thread;
+    private volatile Exception failure;
+    private Block current;
+    private boolean ended;
+
+    private BlockReader(String path, Source source, int blockRows, boolean labels) {
+        this.path = path;
+        this.source = source;
+        this.blockRows = blockRows;
+        free.add(new Block(blockRows, source.dim(), labels));
+        free.add(new Block(blockRows, source.dim(), labels));
+        this.thread = new Thread(this::readAll, "block-reader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Starts reading the file, with the label id of every row when labels is set
+    public static BlockReader open(String path, int blockRows, boolean labels) throws IOException {
+        Source source = BinaryDataset.isBinary(path) ? new BinarySource(path) : new CsvSource(path);
+        return new BlockReader(path, source, Math.max(1, blockRows), labels);
+    }
+
+    public int dim() {
+        return source.dim();
+    }
+
+    private void readAll() {
+        long rows = 0;
+        try {
+            while (true) {
+                Block block = free.take();
+                block.firstRow = rows;
+                block.rows = source.fill(block, blockRows);
+                if (block.rows == 0) {
+                    break;
+                }
+                rows += block.rows;
+                filled.put(block);
+            }
+        } catch (InterruptedException e) {
+            // Closed before the end of the data
+            return;
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+        }
+        filled.add(END);
+    }
+
+    // The next block, valid until the following call, or null once the data is exhausted
+    public Block next() throws IOException {
+        if (current != null) {
+            free.add(current);
+            current = null;
+        }
+        if (ended) {
+            return null;
+        }
+        Block block;
+        try {
+            block = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + path);
+        }
+        if (block == END) {
+            ended = true;
+            if (failure != null) {
+                throw new IOException("Reading " + path + " failed", failure);
+            }
+            return null;
+        }
+        current = block;
+        return block;
+    }
+
+    // Label of every id in Block.labels; for a CSV file only complete once next() returned null
+    public List<String> labelNames() {
+        return source.labelNames();
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        source.close();
+    }
+}
@@ -0,0 +1,88 @@
+package utils;
+
+import java.util.Arrays;
+
+/*
+ * Assignment of a block of points at once for large k and dimension. Since
+ * ||x - c||^2 = ||x||^2 - 2 x.c + ||c||^2 and ||x||^2 is the same for every
+ * centroid, the nearest centroid minimizes ||c||^2 - 2 x.c, so the work is the
+ * point-by-centroid dot product matrix. It is computed tile by tile like a
+ * cache-blocked GEMM: a tile of centroids, cut into dimension slices, stays in
+ * cache while every point of the point tile is multiplied against it.
+ * The expansion cancels digits when a point sits very close to a centroid, so
+ * near-ties may be resolved differently from the direct distance.
+ */
+public class BlockedAssignment {
+
+    private static final int POINT_TILE = 64;
+    private static final int CENTROID_TILE = 64;
+    // 64 centroids x 256 doubles = 128 KB of centroid slices per tile
+    private static final int DIM_TILE = 256;
+
+    // Squared norm of each of the k centroids stored row-major in centroids
+    public static double[] norms(double[] centroids, int k, int dim) {
+        double[] norms = new double[k];
+        for (int c = 0; c < k; c++) {
+            double norm = 0.0;
+            for (int i = 0; i < dim; i++) {
+                double value = centroids[c * dim + i];
+                norm += value * value;
+            }
+            norms[c] = norm;
+        }
+        return norms;
+    }
+
+    // Writes the nearest centroid of the points stored row-major in rows [from, to) of points
+    // to out[outOffset, outOffset + to - from)
+    public static void nearest(double[] points, int from, int to, int dim, double[] centroids, double[] norms,
+            int[] out, int outOffset) {
+        nearest(points, from, to, dim, centroids, norms, out, null, outOffset);
+    }
+
+    // Same, also writing the squared distance of each point to its centroid to minDist from outOffset
+    // unless minDist is null. It is ||x||^2 added back to the minimum, so it shares the cancellation.
+    public static void nearest(double[] points, int from, int to, int dim, double[] centroids, double[] norms,
+            int[] out, double[] minDist, int outOffset) {
+        int k = norms.length;
+        DistanceKernel kernel = DistanceKernel.get();
+        double[] dots = new double[POINT_TILE * CENTROID_TILE];
+        double[] best = new double[POINT_TILE];
+
+        for (int p0 = from; p0 < to; p0 += POINT_TILE) {
+            int p1 = Math.min(to, p0 + POINT_TILE);
+            Arrays.fill(best, Double.MAX_VALUE);
+
+            for (int c0 = 0; c0 < k; c0 += CENTROID_TILE) {
+                int c1 = Math.min(k, c0 + CENTROID_TILE);
+                Arrays.fill(dots, 0.0);
+                for (int d0 = 0; d0 < dim; d0 += DIM_TILE) {
+                    kernel.accumulateDots(points, p0, p1, centroids, c0, c1, d0, Math.min(dim, d0 + DIM_TILE), dim,
+                            dots, CENTROID_TILE);
+                }
+
+                for (int p = p0; p < p1; p++) {
+                    int row = (p - p0) * CENTROID_TILE;
+                    for (int c = c0; c < c1; c++) {
+                        double dist = norms[c] - 2 * dots[row + c - c0];
+                        if (dist < best[p - p0]) {
+                            best[p - p0] = dist;
+                            out[outOffset + p - from] = c;
+                        }
+                    }
+                }
+            }
+
+            if (minDist != null) {
+                for (int p = p0; p < p1; p++) {
+                    double norm = 0.0;
+                    for (int i = 0; i < dim; i++) {
+                        double value = points[p * dim + i];
+                        norm += value * value;
+                    }
+                    minDist[outOffset + p - from] = Math.max(0.0, best[p - p0] + norm);
+                }
+            }
+        }
+    }
+}
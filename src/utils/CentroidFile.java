@@ -0,0 +1,109 @@
+package utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+ * Saved centroids used to warm-start a run. Two layouts are read, told apart by the
+ * first four bytes:
+ *   text:   one centroid per line, comma-separated features (the Hadoop centroids.txt)
+ *   binary: the Hadoop CentroidFile layout, little-endian
+ *     header (16 bytes): int magic, int k, int dim, int unused
+ *     centroids: k * dim doubles, row-major
+ * The binary layout keeps the doubles bit for bit, the text one goes through Double.toString.
+ */
+public class CentroidFile {
+    public static final int MAGIC = 0x31434D4B; // "KMC1"
+    public static final int HEADER_BYTES = 16;
+
+    public static List<Record> read(String path) throws IOException {
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (bytes.length >= HEADER_BYTES && buffer.getInt(0) == MAGIC) {
+            return decode(buffer, path);
+        }
+
+        List<Record> centroids = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new StringReader(new String(bytes)))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] values = line.split(",");
+                double[] features = new double[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    features[i] = Double.parseDouble(values[i].trim());
+                }
+                centroids.add(new Record(features, centroids.size()));
+            }
+        }
+        return centroids;
+    }
+
+    private static List<Record> decode(ByteBuffer buffer, String path) throws IOException {
+        buffer.position(4);
+        int k = buffer.getInt();
+        int dim = buffer.getInt();
+        buffer.getInt();
+        if (k < 0 || dim < 0 || buffer.remaining() < 8L * k * dim) {
+            throw new IOException(path + " is truncated: " + buffer.remaining() + " bytes of centroids, expected "
+                    + 8L * k * dim + " for " + k + " x " + dim);
+        }
+
+        List<Record> centroids = new ArrayList<>(k);
+        for (int c = 0; c < k; c++) {
+            double[] features = new double[dim];
+            for (int i = 0; i < dim; i++) {
+                features[i] = buffer.getDouble();
+            }
+            centroids.add(new Record(features, c));
+        }
+        return centroids;
+    }
+
+    // Writes the binary layout, or the text one when the path ends in .txt
+    public static void write(String path, List<Record> centroids) throws IOException {
+        if (path.endsWith(".txt")) {
+            try (BufferedWriter bw = Files.newBufferedWriter(Paths.get(path))) {
+                for (Record centroid : centroids) {
+                    StringJoiner line = new StringJoiner(",");
+                    for (double value : centroid.features()) {
+                        line.add(Double.toString(value));
+                    }
+                    bw.write(line.toString());
+                    bw.newLine();
+                }
+            }
+            return;
+        }
+
+        int k = centroids.size();
+        int dim = k == 0 ? 0 : centroids.get(0).features().length;
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(HEADER_BYTES + 8L * k * dim))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(k).putInt(dim).putInt(0);
+        for (Record centroid : centroids) {
+            for (double value : centroid.features()) {
+                buffer.putDouble(value);
+            }
+        }
+        Files.write(Paths.get(path), buffer.array());
+    }
+
+    // Checks that saved centroids fit a run with k clusters over dim features
+    public static void validate(List<Record> centroids, int k, int dim) {
+        if (centroids.size() != k) {
+            throw new IllegalArgumentException("Initial centroids hold " + centroids.size() + " clusters, expected " + k);
+        }
+        for (Record centroid : centroids) {
+            if (centroid.features().length != dim) {
+                throw new IllegalArgumentException("Initial centroid has " + centroid.features().length
+                        + " features, expected " + dim);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package utils;
+
+import java.util.*;
+
+public class CentroidSeeding {
+    public static List<Record> random(List<Record> records, int k, Random random) {
+        List<Record> centroids = new ArrayList<>();
+        Set<Integer> chosenIndexes = new HashSet<>();
+        while (chosenIndexes.size() < k) {
+            int idx = random.nextInt(records.size());
+            if (chosenIndexes.add(idx)) { // Ensure unique centroids
+                centroids.add(records.get(idx));
+            }
+        }
+        return centroids;
+    }
+
+    /*
+     * k-means++: the first centroid is drawn uniformly, every next one with probability
+     * proportional to its squared distance to the closest centroid chosen so far.
+     */
+    public static List<Record> kMeansPlusPlus(List<Record> records, int k, Random random) {
+        List<Record> centroids = new ArrayList<>();
+        Record first = records.get(random.nextInt(records.size()));
+        centroids.add(first);
+
+        double[] minDist = new double[records.size()];
+        double total = 0;
+        for (int r = 0; r < records.size(); r++) {
+            minDist[r] = squaredDistance(records.get(r).features(), first.features());
+            total += minDist[r];
+        }
+
+        while (centroids.size() < k) {
+            int chosen = records.size() - 1;
+            if (total > 0) {
+                double target = random.nextDouble() * total;
+                double cumulative = 0;
+                for (int r = 0; r < records.size(); r++) {
+                    cumulative += minDist[r];
+                    if (cumulative >= target && minDist[r] > 0) {
+                        chosen = r;
+                        break;
+                    }
+                }
+            } else {
+                // Every record coincides with a centroid already
+                chosen = random.nextInt(records.size());
+            }
+
+            Record centroid = records.get(chosen);
+            centroids.add(centroid);
+
+            total = 0;
+            for (int r = 0; r < records.size(); r++) {
+                minDist[r] = Math.min(minDist[r], squaredDistance(records.get(r).features(), centroid.features()));
+                total += minDist[r];
+            }
+        }
+        return centroids;
+    }
+
+    private static double squaredDistance(double[] f1, double[] f2) {
+        double dist = 0;
+        for (int i = 0; i < f1.length; i++) {
+            double diff = f1[i] - f2[i];
+            dist += diff * diff;
+        }
+        return dist;
+    }
+}
@@ -0,0 +1,39 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.List;
+
+public class DataLoader {
+    // Loads either the binary format or the CSV layout, chosen by file extension
+    public static void load(String filePath, List<Record> records, List<String> labels) throws IOException {
+        if (BinaryDataset.isBinary(filePath)) {
+            try (BinaryDataset dataset = BinaryDataset.open(filePath)) {
+                dataset.load(records, labels);
+            }
+        } else {
+            loadCsv(filePath, records, labels);
+        }
+    }
+
+    // Reads a CSV file whose last column is the label and every other column a feature
+    public static void loadCsv(String filePath, List<Record> records, List<String> labels) throws IOException {
+        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
+            String line;
+            int idx = 0;
+            while ((line = br.readLine()) != null) {
+                String[] values = line.split(","); // Split by comma
+                double[] featureVector = new double[values.length - 1]; // Exclude last column for labels
+
+                // Parse features
+                for (int i = 0; i < values.length - 1; i++) {
+                    featureVector[i] = Double.parseDouble(values[i]);
+                }
+
+                records.add(new Record(featureVector, idx++));
+                labels.add(values[values.length - 1]); // Last column is the label
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+ * Synthetic Gaussian blobs in the input layouts, for runs far larger than iris:
+ * k centres drawn uniformly in [-10, 10)^dim, every point a centre plus normal noise
+ * (standard deviation spread) and labelled "blob-<j>" after its centre. With skew s the
+ * centres are picked with probability proportional to 1 / (j + 1)^s, so 0 gives equal
+ * sizes and larger values a few big clusters and a long tail of small ones.
+ * The same seed always produces the same file, CSV or .kmb.
+ */
+public class DatasetGenerator {
+    private final int dim;
+    private final double spread;
+    private final double[][] centres;
+    // Cumulative probability of picking each centre
+    private final double[] cumulative;
+    private final Random random;
+
+    public DatasetGenerator(int dim, int k, double skew, double spread, long seed) {
+        this.dim = dim;
+        this.spread = spread;
+        Random centreRandom = new Random(seed);
+        this.centres = new double[k][dim];
+        for (double[] centre : centres) {
+            for (int i = 0; i < dim; i++) {
+                centre[i] = centreRandom.nextDouble() * 20 - 10;
+            }
+        }
+
+        this.cumulative = new double[k];
+        double total = 0;
+        for (int j = 0; j < k; j++) {
+            total += Math.pow(j + 1, -skew);
+            cumulative[j] = total;
+        }
+        for (int j = 0; j < k; j++) {
+            cumulative[j] /= total;
+        }
+        this.random = new Random(seed + 1);
+    }
+
+    public double[][] centres() {
+        return centres;
+    }
+
+    // Fills out with the next point and returns the index of its centre
+    public int next(double[] out) {
+        int j = Arrays.binarySearch(cumulative, random.nextDouble());
+        j = j < 0 ? Math.min(-j - 1, centres.length - 1) : j;
+        double[] centre = centres[j];
+        for (int i = 0; i < dim; i++) {
+            out[i] = centre[i] + spread * random.nextGaussian();
+        }
+        return j;
+    }
+
+    public static String label(int centre) {
+        return "blob-" + centre;
+    }
+
+    // Features are written with 6 decimals, which the .kmb output is rounded to as well
+    private static double round(double value) {
+        return Math.round(value * 1e6) / 1e6;
+    }
+
+    public void writeCsv(String path, long rows) throws IOException {
+        double[] point = new double[dim];
+        StringBuilder line = new StringBuilder();
+        try (BufferedWriter bw = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8)) {
+            for (long row = 0; row < rows; row++) {
+                int centre = next(point);
+                line.setLength(0);
+                for (double value : point) {
+                    line.append(round(value)).append(',');
+                }
+                line.append(label(centre));
+                bw.write(line.toString());
+                bw.newLine();
+            }
+        }
+    }
+
+    // Rows and dim are known up front, so features and labels are written in one pass at their offsets
+    public void writeBinary(String path, long rows) throws IOException {
+        double[] point = new double[dim];
+        long labelsOffset = BinaryDataset.HEADER_BYTES + rows * 8L * dim;
+        long dictionaryOffset = labelsOffset + 4L * rows;
+
+        try (FileChannel out = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer features = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer labelIds = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            long featuresPosition = BinaryDataset.HEADER_BYTES;
+            long labelsPosition = labelsOffset;
+
+            for (long row = 0; row < rows; row++) {
+                int centre = next(point);
+                if (features.remaining() < 8 * dim) {
+                    featuresPosition += writeAt(out, features, featuresPosition);
+                }
+                for (double value : point) {
+                    features.putDouble(round(value));
+                }
+                if (labelIds.remaining() < 4) {
+                    labelsPosition += writeAt(out, labelIds, labelsPosition);
+                }
+                labelIds.putInt(centre);
+            }
+            writeAt(out, features, featuresPosition);
+            writeAt(out, labelIds, labelsPosition);
+
+            // Every centre gets a dictionary entry, even one that drew no rows
+            long position = dictionaryOffset;
+            for (int j = 0; j < centres.length; j++) {
+                byte[] bytes = label(j).getBytes(StandardCharsets.UTF_8);
+                ByteBuffer entry = ByteBuffer.allocate(4 + bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+                entry.putInt(bytes.length).put(bytes);
+                position += writeAt(out, entry, position);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(BinaryDataset.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(BinaryDataset.MAGIC).putInt(dim).putLong(rows).putInt(centres.length).putInt(0)
+                    .putLong(dictionaryOffset);
+            writeAt(out, header, 0);
+        }
+    }
+
+    private static int writeAt(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        buffer.clear();
+        return written;
+    }
+
+    public void write(String path, long rows) throws IOException {
+        if (BinaryDataset.isBinary(path)) {
+            writeBinary(path, rows);
+        } else {
+            writeCsv(path, rows);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("Usage: <output.csv|output" + BinaryDataset.EXTENSION
+                    + "> <rows> <dim> <k> [skew] [spread] [seed]");
+            System.exit(1);
+        }
+        long rows = Long.parseLong(args[1]);
+        int dim = Integer.parseInt(args[2]);
+        int k = Integer.parseInt(args[3]);
+        double skew = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+        double spread = args.length > 5 ? Double.parseDouble(args[5]) : 1;
+        long seed = args.length > 6 ? Long.parseLong(args[6]) : 42;
+        new DatasetGenerator(dim, k, skew, spread, seed).write(args[0], rows);
+    }
+}
@@ -0,0 +1,182 @@
+package utils;
+
+/*
+ * Distance between a point stored at point[offset, offset + dim) and a centroid.
+ * The assignment step only compares candidates, so it works on a reduced value
+ * that is ordered like the distance but cheaper to compute (no square root or
+ * p-th root); toDistance/toReduced convert between the two when actual
+ * distances are needed, e.g. for the triangle-inequality bounds.
+ * Same implementations as kmeans_hadoop.src.Distance.
+ */
+public interface Distance {
+
+    double reduced(double[] point, int offset, double[] centroid);
+
+    double toDistance(double reduced);
+
+    double toReduced(double distance);
+
+    // Whether the triangle inequality holds, which the pruned assignment step relies on
+    boolean isMetric();
+
+    default double distance(double[] point, int offset, double[] centroid) {
+        return toDistance(reduced(point, offset, centroid));
+    }
+
+    // Contribution of a point to the SSE, the squared distance; for sqeuclidean the
+    // distance is already squared, so the Euclidean family overrides it
+    default double cost(double[] point, int offset, double[] centroid) {
+        return toCost(reduced(point, offset, centroid));
+    }
+
+    // The same contribution from a reduced distance the assignment step already has
+    default double toCost(double reduced) {
+        double dist = toDistance(reduced);
+        return dist * dist;
+    }
+
+    // A metric name, or a Minkowski exponent p (1 is Manhattan, 2 Euclidean)
+    static Distance parse(String name) {
+        switch (name.trim().toLowerCase()) {
+            case "euclidean":
+                return new Euclidean();
+            case "sqeuclidean":
+                return new SquaredEuclidean();
+            case "manhattan":
+                return new Manhattan();
+            case "cosine":
+                return new Cosine();
+            default:
+                double p;
+                try {
+                    p = Double.parseDouble(name);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Unknown distance: " + name);
+                }
+                if (p == 1) {
+                    return new Manhattan();
+                }
+                return p == 2 ? new Euclidean() : new Minkowski(p);
+        }
+    }
+
+    class SquaredEuclidean implements Distance {
+        public double reduced(double[] point, int offset, double[] centroid) {
+            return DistanceKernel.get().squaredEuclidean(point, offset, centroid, 0, centroid.length);
+        }
+
+        // Also used by Euclidean, whose distance is the square root of the same value
+        public double cost(double[] point, int offset, double[] centroid) {
+            return reduced(point, offset, centroid);
+        }
+
+        public double toCost(double reduced) {
+            return reduced;
+        }
+
+        public double toDistance(double reduced) {
+            return reduced;
+        }
+
+        public double toReduced(double distance) {
+            return distance;
+        }
+
+        public boolean isMetric() {
+            return false;
+        }
+    }
+
+    class Euclidean extends SquaredEuclidean {
+        public double toDistance(double reduced) {
+            return Math.sqrt(reduced);
+        }
+
+        public double toReduced(double distance) {
+            return distance * distance;
+        }
+
+        public boolean isMetric() {
+            return true;
+        }
+    }
+
+    class Manhattan implements Distance {
+        public double reduced(double[] point, int offset, double[] centroid) {
+            double dist = 0.0;
+            for (int i = 0; i < centroid.length; i++) {
+                dist += Math.abs(point[offset + i] - centroid[i]);
+            }
+            return dist;
+        }
+
+        public double toDistance(double reduced) {
+            return reduced;
+        }
+
+        public double toReduced(double distance) {
+            return distance;
+        }
+
+        public boolean isMetric() {
+            return true;
+        }
+    }
+
+    class Minkowski implements Distance {
+        private final double p;
+
+        public Minkowski(double p) {
+            if (!(p >= 1)) {
+                throw new IllegalArgumentException("Minkowski exponent must be at least 1: " + p);
+            }
+            this.p = p;
+        }
+
+        public double reduced(double[] point, int offset, double[] centroid) {
+            double dist = 0.0;
+            for (int i = 0; i < centroid.length; i++) {
+                dist += Math.pow(Math.abs(point[offset + i] - centroid[i]), p);
+            }
+            return dist;
+        }
+
+        public double toDistance(double reduced) {
+            return Math.pow(reduced, 1 / p);
+        }
+
+        public double toReduced(double distance) {
+            return Math.pow(distance, p);
+        }
+
+        public boolean isMetric() {
+            return true;
+        }
+    }
+
+    // 1 - cos(point, centroid) for points normalized to unit length beforehand;
+    // centroids are means and are not unit length, so their norm is divided out
+    class Cosine implements Distance {
+        public double reduced(double[] point, int offset, double[] centroid) {
+            double dot = 0.0;
+            double norm = 0.0;
+            for (int i = 0; i < centroid.length; i++) {
+                dot += point[offset + i] * centroid[i];
+                norm += centroid[i] * centroid[i];
+            }
+            return norm == 0 ? 1.0 : 1.0 - dot / Math.sqrt(norm);
+        }
+
+        public double toDistance(double reduced) {
+            return reduced;
+        }
+
+        public double toReduced(double distance) {
+            return distance;
+        }
+
+        public boolean isMetric() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package utils;
+
+public enum InitMode {
+    // k distinct records drawn uniformly at random
+    RANDOM,
+    // k-means++ D^2 weighted seeding
+    KMEANS_PLUS_PLUS
+}
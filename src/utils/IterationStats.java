@@ -0,0 +1,20 @@
+package utils;
+
+// What one iteration did: per-centroid shift, SSE against the assigned centroids,
+// points that changed cluster (-1 when not tracked) and frozen clusters
+public record IterationStats(int iteration, double[] shifts, double sse, long reassigned, int frozen) {
+
+    public double maxShift() {
+        double max = 0;
+        for (double shift : shifts) {
+            max = Math.max(max, shift);
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Iteration %d: max shift %.6g, SSE %.6g, reassigned %s, frozen %d/%d",
+                iteration, maxShift(), sse, reassigned < 0 ? "n/a" : Long.toString(reassigned), frozen, shifts.length);
+    }
+}
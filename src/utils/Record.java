@@ -1,4 +1,4 @@
 package utils;
 
-public record Record(Double[] features, int index) {
+public record Record(double[] features, int index) {
 }